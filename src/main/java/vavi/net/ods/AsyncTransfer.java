@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+
+
+/**
+ * A range sent without a thread waiting on it: a chunk is read off the disc when the
+ * connection can take more, and written when it has been read. A slow client holds
+ * on to a buffer, not to one of the server's threads.
+ * <p>
+ * At most one of reading and writing goes on at a time: a read is started only by
+ * whoever found the connection ready, and the container calls back only when it
+ * was found not to be, which is never while a read is going on.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class AsyncTransfer implements WriteListener, CompletionHandler<Integer, Void> {
+
+    static final Logger logging = Logger.getLogger(AsyncTransfer.class.getName());
+
+    /** how much is read off the disc at a time */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final AsyncContext context;
+
+    private final ServletOutputStream out;
+
+    /** null when all there is to send is in the buffer already */
+    private final AsynchronousFileChannel file;
+
+    /** what is read and not written yet, between position and limit */
+    private final ByteBuffer buffer;
+
+    /** where the next read starts */
+    private long position;
+
+    /** the last byte to send */
+    private final long end;
+
+    /** what is told of the sending */
+    interface Listener {
+        /** Some bytes were handed to the connection. */
+        void sent(int bytes);
+
+        /** The sending ended, the response is about to be completed. */
+        void done(boolean failed);
+    }
+
+    private final Listener listener;
+
+    /**
+     * Sends the bytes between the two addresses, both included, out of the file.
+     */
+    AsyncTransfer(AsyncContext context, AsynchronousFileChannel file, long start, long end, Listener listener) throws IOException {
+        this.context = context;
+        this.out = context.getResponse().getOutputStream();
+        this.file = file;
+        this.buffer = ByteBuffer.allocate((int) Math.min(CHUNK_SIZE, end - start + 1)).flip();
+        this.position = start;
+        this.end = end;
+        this.listener = listener;
+    }
+
+    /**
+     * Sends what is in memory already.
+     */
+    AsyncTransfer(AsyncContext context, byte[] data, Listener listener) throws IOException {
+        this.context = context;
+        this.out = context.getResponse().getOutputStream();
+        this.file = null;
+        this.buffer = ByteBuffer.wrap(data);
+        this.position = 0;
+        this.end = -1;
+        this.listener = listener;
+    }
+
+    /** Sets off sending, the container calling back as soon as it can be written to. */
+    void start() {
+        context.setTimeout(0); // the connection's own idle timeout sees to a client gone
+        out.setWriteListener(this);
+    }
+
+    @Override
+    public void onWritePossible() throws IOException {
+        while (out.isReady()) {
+            if (buffer.hasRemaining()) {
+                int n = buffer.remaining();
+                out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), n);
+                buffer.position(buffer.limit());
+                listener.sent(n);
+            } else if (position > end) {
+                done(false);
+                return;
+            } else {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position + 1));
+                file.read(buffer, position, null, this);
+                return;
+            }
+        }
+    }
+
+    /** A read came back. */
+    @Override
+    public void completed(Integer result, Void attachment) {
+        if (result == -1) {
+            failed(new EOFException("the disc ends before " + position), null);
+            return;
+        }
+        position += result;
+        if (buffer.hasRemaining()) {
+            // came back short, read the rest
+            file.read(buffer, position, null, this);
+            return;
+        }
+        buffer.flip();
+        try {
+            onWritePossible();
+        } catch (IOException e) {
+            onError(e);
+        }
+    }
+
+    /** A read failed. */
+    @Override
+    public void failed(Throwable t, Void attachment) {
+        onError(t);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        logging.log(Level.FINE, t.getMessage(), t);
+        done(true);
+    }
+
+    /** Ends the response, telling the listener first. */
+    private void done(boolean failed) {
+        listener.done(failed);
+        context.complete();
+    }
+}
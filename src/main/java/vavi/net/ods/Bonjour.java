@@ -9,6 +9,13 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.jmdns.JmDNS;
@@ -24,24 +31,97 @@ public class Bonjour implements Plugin, Closeable {
     /** the bonjour service type macOS's Finder browses for a remote disc */
     static final String TYPE = "_odisk._tcp.local.";
 
+    /**
+     * how long the discs have to stay as they are before they are announced: images
+     * copied in one after the other are announced once, not once each
+     */
+    static final long QUIET = TimeUnit.SECONDS.toMillis(2);
+
+    /** how long the discs are announced late at most, however often they change */
+    static final long MAX_DELAY = TimeUnit.SECONDS.toMillis(10);
+
+    /** what the service is announced through, jmdns on the network, anything in a test */
+    interface Announcer extends Closeable {
+        /** Announces the service with the text record, or the text record anew when the service is already. */
+        void announce(Map<String, String> text) throws IOException;
+    }
+
     OdsServer server;
-    JmDNS zeroconf;
-    ServiceInfo info = null;
+
+    private final Announcer announcer;
+
+    /** how long the discs have to stay as they are, {@link #QUIET} but in a test */
+    private final long quiet;
+
+    /** how long the discs are announced late at most, {@link #MAX_DELAY} but in a test */
+    private final long maxDelay;
+
+    /** what was announced last, for the same not to be announced again */
+    private Map<String, String> announced;
+
+    /** announces what is pending */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ods-bonjour");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** the announcement waiting for the discs to stay as they are, null for none */
+    private ScheduledFuture<?> pending;
+
+    /** when the first of the changes pending came */
+    private long firstPending;
+
+    private final Lock lock = new ReentrantLock();
 
     public Bonjour(OdsServer server) throws IOException {
+        this(server, new Zeroconf(server), QUIET, MAX_DELAY);
+    }
+
+    /**
+     * @param quiet how long the discs have to stay as they are before they are announced
+     * @param maxDelay how long they are announced late at most
+     */
+    Bonjour(OdsServer server, Announcer announcer, long quiet, long maxDelay) throws IOException {
         this.server = server;
-        // bind to the address we advertise, not to loopback, or nothing on the lan sees us
-        InetAddress address = InetAddress.getByName(server.host());
-        zeroconf = JmDNS.create(address, InetAddress.getLocalHost().getHostName());
-Debug.println("zeroconf: " + address);
-        update();
+        this.announcer = announcer;
+        this.quiet = quiet;
+        this.maxDelay = maxDelay;
+        announce();
     }
 
+    /** Announces the discs as they are once they stay so for a while. */
+    @Override
     public void update() throws IOException {
-        remove();
-        String hostname = InetAddress.getLocalHost().getHostName().replaceFirst("\\.local\\.?$", "");
-Debug.println("hostname: " + hostname);
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            if (pending == null) {
+                firstPending = now;
+            } else {
+                pending.cancel(false);
+            }
+            long delay = Math.min(quiet, Math.max(0, firstPending + maxDelay - now));
+            pending = scheduler.schedule(() -> {
+                lock.lock();
+                try {
+                    pending = null;
+                } finally {
+                    lock.unlock();
+                }
+                try {
+                    announce();
+                } catch (IOException | RuntimeException e) {
+                    logging.log(Level.WARNING, e.getMessage(), e);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
 
+    /** @return the text record naming every disc on offer */
+    private Map<String, String> text() throws IOException {
         Map<String, String> desc = new HashMap<>();
         desc.put("sys", "waMA=A4:BA:DB:E7:89:CD,adVF=0x4,adDT=0x3,adCC=1");
 
@@ -49,44 +129,100 @@ Debug.println("hostname: " + hostname);
             String ident = e.getKey();
             OnlineDisk disk = e.getValue();
             desc.put(ident, String.format("adVN=%s,adVT=public.cd-media", disk.label()));
-            logging.info(String.format("Announcing disk \"%s\" as %s with name \"%s\"", disk.path(), ident, disk.label()));
+            logging.fine(String.format("Announcing disk \"%s\" as %s with name \"%s\"", disk.path(), ident, disk.label()));
         }
-
-        info = ServiceInfo.create(
-            TYPE,
-            hostname,
-            server.port(),
-            0, 0,
-            desc
-        );
-Debug.println("host: " + server.host() + ":" + server.port());
-Debug.println("info: " + info.getQualifiedName());
-
-        add();
+        return desc;
     }
 
-    void add() throws IOException {
-        if (info == null) {
+    /** Announces the discs now, unless they are what was announced last. */
+    void announce() throws IOException {
+        Map<String, String> desc = text();
+        if (desc.equals(announced)) {
             return;
         }
-        zeroconf.registerService(info);
-Debug.println("added");
-    }
-
-    void remove() {
-        if (info == null) {
-            return;
-        }
-        zeroconf.unregisterService(info);
-        info = null;
-Debug.println("removed");
+        announcer.announce(desc);
+        announced = desc;
+        logging.info("Announced " + (desc.size() - 1) + " disks");
     }
 
     /** Takes the announcement down, rather than leave it to a finalizer that never runs. */
     @Override
     public void close() throws IOException {
-        zeroconf.unregisterAllServices();
-        zeroconf.close();
-        info = null;
+        scheduler.shutdownNow();
+        announcer.close();
+    }
+
+    /**
+     * Announces through jmdns: the service the first time, only its text record after
+     * that, which jmdns announces as it is changed without taking the service down.
+     */
+    static class Zeroconf implements Announcer {
+
+        JmDNS zeroconf;
+        ServiceInfo info = null;
+
+        /** the name the service is announced under, looked up once: a reverse lookup may take seconds */
+        private final String hostname;
+
+        private final int port;
+
+        Zeroconf(OdsServer server) throws IOException {
+            // bind to the address we advertise, not to loopback, or nothing on the lan sees us
+            InetAddress address = InetAddress.getByName(server.host());
+            String localHost = InetAddress.getLocalHost().getHostName();
+            zeroconf = JmDNS.create(address, localHost);
+            hostname = localHost.replaceFirst("\\.local\\.?$", "");
+            port = server.port();
+Debug.println("zeroconf: " + address + ", hostname: " + hostname);
+        }
+
+        @Override
+        public void announce(Map<String, String> desc) throws IOException {
+            if (info != null) {
+                try {
+                    info.setText(desc);
+                    return;
+                } catch (RuntimeException e) {
+                    logging.fine("cannot change the text record in place: " + e);
+                    remove();
+                }
+            }
+
+            info = ServiceInfo.create(
+                TYPE,
+                hostname,
+                port,
+                0, 0,
+                desc
+            );
+Debug.println("port: " + port);
+Debug.println("info: " + info.getQualifiedName());
+
+            add();
+        }
+
+        void add() throws IOException {
+            if (info == null) {
+                return;
+            }
+            zeroconf.registerService(info);
+Debug.println("added");
+        }
+
+        void remove() {
+            if (info == null) {
+                return;
+            }
+            zeroconf.unregisterService(info);
+            info = null;
+Debug.println("removed");
+        }
+
+        @Override
+        public void close() throws IOException {
+            zeroconf.unregisterAllServices();
+            zeroconf.close();
+            info = null;
+        }
     }
 }
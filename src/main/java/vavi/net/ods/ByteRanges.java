@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * The ranges a {@code Range} header asks for, e.g. {@code bytes=0-2047,32768-,-512},
+ * as far as they are on a disc of a given size: in the order they are on the disc,
+ * and the ones that overlap or touch taken together, for a disc to be read for them
+ * in one pass from start to end.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+final class ByteRanges {
+
+    /** one range, both ends included */
+    record Range(long start, long end) {
+
+        long length() {
+            return end - start + 1;
+        }
+    }
+
+    /** "bytes=" and then the ranges */
+    private static final Pattern header = Pattern.compile("\\s*bytes\\s*=\\s*(.+)");
+
+    /** "a-b", "a-", or "-n" for the last n bytes */
+    private static final Pattern spec = Pattern.compile("\\s*(\\d*)\\s*-\\s*(\\d*)\\s*");
+
+    private ByteRanges() {
+    }
+
+    /**
+     * @param requested the value of the header
+     * @param size how big the disc is
+     * @return the ranges, in order and merged, ending at the end of the disc at the
+     *         latest; none when none is on the disc at all, null when the header does
+     *         not say anything that makes sense
+     */
+    static List<Range> parse(String requested, long size) {
+        if (requested == null) {
+            return null;
+        }
+        Matcher m = header.matcher(requested);
+        if (!m.matches()) {
+            return null;
+        }
+
+        List<Range> ranges = new ArrayList<>();
+        for (String part : m.group(1).split(",")) {
+            Matcher r = spec.matcher(part);
+            if (!r.matches() || (r.group(1).isEmpty() && r.group(2).isEmpty())) {
+                return null;
+            }
+            long start, end;
+            if (r.group(1).isEmpty()) {
+                // the last so many bytes
+                long suffix = number(r.group(2));
+                start = Math.max(0, size - suffix);
+                end = suffix == 0 ? -1 : size - 1;
+            } else {
+                start = number(r.group(1));
+                // an open ended "bytes=n-" asks for everything that is left
+                end = r.group(2).isEmpty() ? size - 1 : Math.min(number(r.group(2)), size - 1);
+            }
+            if (start < size && start <= end) {
+                ranges.add(new Range(start, end));
+            }
+        }
+        return merge(ranges);
+    }
+
+    /** @return the digits as a number, one past any disc for more digits than a long holds */
+    private static long number(String digits) {
+        try {
+            return Long.parseLong(digits);
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /** @return the ranges in the order they are on the disc, the ones overlapping or touching made one */
+    static List<Range> merge(List<Range> ranges) {
+        List<Range> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingLong(Range::start));
+        List<Range> merged = new ArrayList<>();
+        for (Range range : sorted) {
+            Range last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range.start() <= last.end() + 1) {
+                merged.set(merged.size() - 1, new Range(last.start(), Math.max(last.end(), range.end())));
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
+}
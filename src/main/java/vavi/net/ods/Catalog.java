@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The discs served at one moment, as they were when they were last listed: never
+ * changed, only replaced with another as a whole, for a request to look a disc up
+ * in without a lock while the discs are listed again, and without building anything
+ * to look it up in either.
+ *
+ * @param drives the optical drives
+ * @param images the disc images
+ * @param disks all of them under the name they are served as, "disk0" on, a disc
+ *              keeping its name for as long as it is served
+ * @param next the number the next disc new to the catalog is named after
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+record Catalog(List<OnlineDisk> drives, List<OnlineDisk> images, Map<String, OnlineDisk> disks, int next) {
+
+    /** @return the drives and the images, named in the order they are in */
+    static Catalog of(List<OnlineDisk> drives, List<OnlineDisk> images) {
+        return of(drives, images, null);
+    }
+
+    /**
+     * @param previous the catalog this replaces, null for none: a disc of a path in
+     *                 it keeps its name, a disc new to it is named anew, and no name
+     *                 is given to another disc, for a client that mounted a disc never
+     *                 to be served another under its name
+     * @return the drives and the images, named
+     */
+    static Catalog of(List<OnlineDisk> drives, List<OnlineDisk> images, Catalog previous) {
+        Map<Path, String> names = new HashMap<>();
+        int next = 0;
+        if (previous != null) {
+            previous.disks.forEach((name, disk) -> names.put(disk.path(), name));
+            next = previous.next;
+        }
+        Map<String, OnlineDisk> disks = new LinkedHashMap<>();
+        for (List<OnlineDisk> list : List.of(drives, images)) {
+            for (OnlineDisk disk : list) {
+                String name = names.get(disk.path());
+                disks.put(name != null ? name : "disk" + next++, disk);
+            }
+        }
+        return new Catalog(List.copyOf(drives), List.copyOf(images), Collections.unmodifiableMap(disks), next);
+    }
+
+    /** @return the disc served under the name, null for none */
+    OnlineDisk get(String name) {
+        return disks.get(name);
+    }
+}
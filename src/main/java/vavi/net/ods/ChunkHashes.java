@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * The sha-256 of every {@link #CHUNK_SIZE} bytes of a disc image as it is served,
+ * and the hash tree over those, kept in a file beside the image. A range is checked
+ * by hashing the chunks it touches, not the whole image, and a chunk found intact
+ * once is not hashed again for as long as this is around.
+ * <p>
+ * The file holds the root of the tree as well: a file whose hashes do not add up to
+ * it is not taken, and the image is hashed again.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+final class ChunkHashes {
+
+    /** what the file is called after its image, e.g. {@code disc.iso.ods-sums} */
+    static final String SUFFIX = ".ods-sums";
+
+    /** how much of the disc one hash is of */
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    /** "ODSH" */
+    private static final int MAGIC = 0x4f445348;
+
+    private static final int VERSION = 1;
+
+    private static final int HASH_SIZE = 32;
+
+    /** how big the disc is, as served */
+    private final long size;
+
+    /** how long the image file was when it was hashed */
+    private final long length;
+
+    /** when the image file was modified last when it was hashed */
+    private final long modified;
+
+    /** one hash per chunk */
+    private final byte[][] leaves;
+
+    private final byte[] root;
+
+    /** the chunks found intact since this was read */
+    private final BitSet verified;
+
+    private final Lock lock = new ReentrantLock();
+
+    private ChunkHashes(long size, long length, long modified, byte[][] leaves) {
+        this.size = size;
+        this.length = length;
+        this.modified = modified;
+        this.leaves = leaves;
+        this.root = root(leaves);
+        this.verified = new BitSet(leaves.length);
+    }
+
+    /** @return the file the hashes of the image are kept in */
+    static Path file(Path image) {
+        return image.resolveSibling(image.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Hashes the disc a chunk at a time.
+     *
+     * @param reader what reads the disc as it is served
+     * @param size how big the disc is
+     * @param attributes the image file's, as they are before it is read
+     */
+    static ChunkHashes build(ElevatorScheduler.Reader reader, long size, BasicFileAttributes attributes) throws IOException {
+        byte[][] leaves = new byte[chunks(size)][];
+        for (int chunk = 0; chunk < leaves.length; chunk++) {
+            long position = (long) chunk * CHUNK_SIZE;
+            leaves[chunk] = sha256(read(reader, position, (int) Math.min(CHUNK_SIZE, size - position)));
+        }
+        return new ChunkHashes(size, attributes.size(), attributes.lastModifiedTime().toMillis(), leaves);
+    }
+
+    /**
+     * Hashes a disc fed to it from start to end, a chunk as it is filled, for the
+     * disc to be hashed as it is read or written for something else, not read again.
+     */
+    static final class Builder {
+
+        private final List<byte[]> leaves = new ArrayList<>();
+
+        private final MessageDigest chunk = sha256();
+
+        /** how much of the chunk being hashed was fed */
+        private int filled;
+
+        /** Hashes the bytes, the next of the disc. */
+        void update(byte[] data, int offset, int length) {
+            while (length > 0) {
+                int n = Math.min(length, CHUNK_SIZE - filled);
+                chunk.update(data, offset, n);
+                filled += n;
+                offset += n;
+                length -= n;
+                if (filled == CHUNK_SIZE) {
+                    leaves.add(chunk.digest());
+                    filled = 0;
+                }
+            }
+        }
+
+        /**
+         * @param attributes the image file's, as they were before it was fed
+         * @return the hashes of what was fed, the whole disc, once it is done
+         */
+        ChunkHashes build(BasicFileAttributes attributes) {
+            long size = (long) leaves.size() * CHUNK_SIZE + filled;
+            if (filled > 0) {
+                leaves.add(chunk.digest());
+                filled = 0;
+            }
+            return new ChunkHashes(size, attributes.size(), attributes.lastModifiedTime().toMillis(), leaves.toArray(byte[][]::new));
+        }
+    }
+
+    /**
+     * @return the hashes kept beside the image, null when there are none, they are of
+     *         the image as it was before it changed, or they do not add up
+     */
+    static ChunkHashes load(Path image) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(image, BasicFileAttributes.class);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file(image))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != CHUNK_SIZE) {
+                return null;
+            }
+            long size = in.readLong();
+            long length = in.readLong();
+            long modified = in.readLong();
+            if (length != attributes.size() || modified != attributes.lastModifiedTime().toMillis()) {
+                return null;
+            }
+            int count = in.readInt();
+            if (count != chunks(size)) {
+                return null;
+            }
+            byte[][] leaves = new byte[count][HASH_SIZE];
+            for (byte[] leaf : leaves) {
+                in.readFully(leaf);
+            }
+            byte[] root = new byte[HASH_SIZE];
+            in.readFully(root);
+            ChunkHashes hashes = new ChunkHashes(size, length, modified, leaves);
+            return Arrays.equals(root, hashes.root) ? hashes : null;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /** Writes the hashes beside the image, to a file beside that first and then over it. */
+    void save(Path image) throws IOException {
+        Path file = file(image);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(CHUNK_SIZE);
+            out.writeLong(size);
+            out.writeLong(length);
+            out.writeLong(modified);
+            out.writeInt(leaves.length);
+            for (byte[] leaf : leaves) {
+                out.write(leaf);
+            }
+            out.write(root);
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** @return how many chunks the disc is */
+    int chunks() {
+        return leaves.length;
+    }
+
+    /** @return the root of the hash tree */
+    byte[] root() {
+        return root.clone();
+    }
+
+    /**
+     * Hashes the chunk again, whether it was found intact before or not.
+     *
+     * @return whether it is what it was when it was hashed
+     */
+    boolean intact(ElevatorScheduler.Reader reader, int chunk) throws IOException {
+        return hashed(reader, chunk) != null;
+    }
+
+    /** @return the chunk as it was read to be hashed again, null when it is not what it was */
+    private byte[] hashed(ElevatorScheduler.Reader reader, int chunk) throws IOException {
+        long position = (long) chunk * CHUNK_SIZE;
+        byte[] data = read(reader, position, (int) Math.min(CHUNK_SIZE, size - position));
+        boolean intact = Arrays.equals(leaves[chunk], sha256(data));
+        lock.lock();
+        try {
+            verified.set(chunk, intact);
+        } finally {
+            lock.unlock();
+        }
+        return intact ? data : null;
+    }
+
+    /**
+     * Checks the chunk the two addresses are in, both included, unless it was found
+     * intact before.
+     *
+     * @return the bytes between the two addresses out of the chunk as it was read to
+     *         be checked, null when it was not read, having been found intact before
+     * @throws IOException when the chunk is not what it was when it was hashed
+     */
+    byte[] check(ElevatorScheduler.Reader reader, long start, long end) throws IOException {
+        int chunk = (int) (start / CHUNK_SIZE);
+        if (end / CHUNK_SIZE != chunk) {
+            throw new IllegalArgumentException(start + "-" + end + " is more than one chunk");
+        }
+        lock.lock();
+        try {
+            if (verified.get(chunk)) {
+                return null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        byte[] data = hashed(reader, chunk);
+        if (data == null) {
+            throw new IOException(String.format("chunk %d at %d is not what it was", chunk, (long) chunk * CHUNK_SIZE));
+        }
+        long position = (long) chunk * CHUNK_SIZE;
+        return Arrays.copyOfRange(data, (int) (start - position), (int) (end - position + 1));
+    }
+
+    /**
+     * Checks the chunks between the two addresses, both included, those not found
+     * intact before.
+     *
+     * @throws IOException when one of them is not what it was when it was hashed
+     */
+    void verify(ElevatorScheduler.Reader reader, long start, long end) throws IOException {
+        int last = (int) (end / CHUNK_SIZE);
+        for (int chunk = (int) (start / CHUNK_SIZE); chunk <= last; chunk++) {
+            lock.lock();
+            try {
+                chunk = verified.nextClearBit(chunk);
+            } finally {
+                lock.unlock();
+            }
+            if (chunk <= last && !intact(reader, chunk)) {
+                throw new IOException(String.format("chunk %d at %d is not what it was", chunk, (long) chunk * CHUNK_SIZE));
+            }
+        }
+    }
+
+    /**
+     * @return the sha-256 of the bytes between the two addresses, both included, as
+     *         base64, when those are one chunk, null otherwise
+     */
+    String digest(long start, long end) {
+        if (start % CHUNK_SIZE != 0 || end != Math.min(start + CHUNK_SIZE, size) - 1) {
+            return null;
+        }
+        return Base64.getEncoder().encodeToString(leaves[(int) (start / CHUNK_SIZE)]);
+    }
+
+    private static int chunks(long size) {
+        return (int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    }
+
+    /** @return the root of the tree over the leaves, the hash of each pair of nodes up to one */
+    static byte[] root(byte[][] leaves) {
+        if (leaves.length == 0) {
+            return sha256(new byte[0]);
+        }
+        byte[][] level = leaves;
+        while (level.length > 1) {
+            byte[][] up = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < up.length; i++) {
+                // an odd one out goes up as it is
+                up[i] = 2 * i + 1 < level.length ? sha256(level[2 * i], level[2 * i + 1]) : level[2 * i];
+            }
+            level = up;
+        }
+        return level[0];
+    }
+
+    /** @return length bytes from the given position on, failing when the disc comes back short */
+    private static byte[] read(ElevatorScheduler.Reader reader, long position, int length) throws IOException {
+        byte[] data = reader.read(position, length);
+        if (data.length != length) {
+            throw new IOException(String.format("the disc ends before %d", position + length));
+        }
+        return data;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] sha256(byte[]... data) {
+        MessageDigest digest = sha256();
+        for (byte[] d : data) {
+            digest.update(d);
+        }
+        return digest.digest();
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+
+/**
+ * An iso stored a block at a time compressed, CSO with deflate or ZSO with lz4, read
+ * as the iso it is: a range is read by reading the blocks it touches out of the
+ * index, and inflating those only. The last blocks inflated are kept, a client reads
+ * a block in several requests more often than not.
+ * <p>
+ * Both start with the same header, little endian: the magic, the size of the header,
+ * the size of the iso, the size of a block, a version and how many bits an offset in
+ * the index is shifted by. Then comes the index, an offset for each block and one
+ * past the last, the top bit set for a block stored as it is.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class CompressedIso {
+
+    /** how the blocks are compressed */
+    enum Format {
+        /** raw deflate */
+        CSO("CISO"),
+        /** lz4 blocks */
+        ZSO("ZISO");
+
+        final String magic;
+
+        Format(String magic) {
+            this.magic = magic;
+        }
+    }
+
+    static final int HEADER_SIZE = 24;
+
+    /** the flag of a block stored as it is */
+    static final int PLAIN = 0x8000_0000;
+
+    /** how big a block is at most, a bigger one being garbage */
+    static final int MAX_BLOCK_SIZE = 16 * 1024 * 1024;
+
+    /** how many blocks inflated are kept */
+    static final int CACHED_BLOCKS = 64;
+
+    private final DiskChannel channel;
+
+    private final Format format;
+
+    /** how big the iso is */
+    private final long size;
+
+    private final int blockSize;
+
+    private final int align;
+
+    /** where each block starts in the file, shifted, and where the last one ends */
+    private final int[] index;
+
+    /** the blocks inflated last, the most recently read last */
+    private final Map<Integer, byte[]> blocks = new LinkedHashMap<>(CACHED_BLOCKS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * Reads the header and the index.
+     *
+     * @throws IOException when the file is not of the format
+     */
+    CompressedIso(DiskChannel channel, Format format) throws IOException {
+        this.channel = channel;
+        this.format = format;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(header, 0);
+        header.flip();
+        byte[] magic = new byte[4];
+        header.get(magic);
+        if (!format.magic.equals(new String(magic, StandardCharsets.US_ASCII))) {
+            throw new IOException("not " + format + ": " + new String(magic, StandardCharsets.ISO_8859_1));
+        }
+        int headerSize = header.getInt();
+        this.size = header.getLong();
+        this.blockSize = header.getInt();
+        header.get(); // version
+        this.align = header.get() & 0xff;
+        if (blockSize <= 0 || blockSize > MAX_BLOCK_SIZE || size < 0 || align > 31) {
+            throw new IOException(String.format("broken %s header: block size %d, size %d, align %d", format, blockSize, size, align));
+        }
+
+        long count = (size + blockSize - 1) / blockSize + 1;
+        if (count > Integer.MAX_VALUE / 4) {
+            throw new IOException(format + " index too big: " + count);
+        }
+        ByteBuffer index = ByteBuffer.allocate((int) count * 4).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(index, Math.max(headerSize, HEADER_SIZE));
+        index.flip();
+        this.index = new int[(int) count];
+        index.asIntBuffer().get(this.index);
+
+        // what is read of a block is as the index says, a broken one is told now
+        long most = 2L * blockSize + (1L << align);
+        for (int block = 0; block < count - 1; block++) {
+            long stored = stored(block + 1) - stored(block);
+            if (stored < 0 || stored > most) {
+                throw new IOException(String.format("broken %s index: block %d is %d bytes stored", format, block, stored));
+            }
+        }
+    }
+
+    /** @return where the block is in the file */
+    private long stored(int block) {
+        return (long) (index[block] & ~PLAIN) << align;
+    }
+
+    /** @return how big the iso is */
+    long size() {
+        return size;
+    }
+
+    /** @return length bytes of the iso from the given position on */
+    byte[] read(long position, int length) throws IOException {
+        byte[] data = new byte[length];
+        int done = 0;
+        while (done < length) {
+            long at = position + done;
+            int block = (int) (at / blockSize);
+            int offset = (int) (at % blockSize);
+            byte[] inflated = block(block);
+            int n = Math.min(inflated.length - offset, length - done);
+            System.arraycopy(inflated, offset, data, done, n);
+            done += n;
+        }
+        return data;
+    }
+
+    /** @return the block inflated, out of the ones kept when it is one of them */
+    private byte[] block(int block) throws IOException {
+        lock.lock();
+        try {
+            byte[] data = blocks.get(block);
+            if (data != null) {
+                return data;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        byte[] data = inflate(block);
+        lock.lock();
+        try {
+            blocks.put(block, data);
+        } finally {
+            lock.unlock();
+        }
+        return data;
+    }
+
+    /** @return the block read out of the file and inflated */
+    private byte[] inflate(int block) throws IOException {
+        long start = stored(block);
+        long end = stored(block + 1);
+        int length = (int) Math.min(blockSize, size - (long) block * blockSize);
+        byte[] stored = channel.read(start, (int) (end - start));
+        if ((index[block] & PLAIN) != 0) {
+            return stored.length == length ? stored : Arrays.copyOf(stored, length);
+        }
+
+        byte[] data = new byte[length];
+        switch (format) {
+        case CSO:
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(stored);
+                int n = 0;
+                while (n < length) {
+                    int r = inflater.inflate(data, n, length - n);
+                    if (r == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException(String.format("block %d inflates to %d bytes, not %d", block, n, length));
+                    }
+                    n += r;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("block " + block, e);
+            } finally {
+                inflater.end();
+            }
+            break;
+        case ZSO:
+            Lz4.decompress(stored, data);
+            break;
+        }
+        return data;
+    }
+}
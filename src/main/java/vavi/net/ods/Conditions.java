@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * What a client's conditional headers, {@code If-None-Match}, {@code If-Modified-Since}
+ * and {@code If-Range}, say about a disc as it is now, told by its entity tag and
+ * when it was modified last. A client holding a copy of a disc asks whether it is
+ * still the disc, and a client resuming a read asks for the rest only when the disc
+ * is the one it read the start of.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+final class Conditions {
+
+    /** e.g. "Sun, 06 Nov 1994 08:49:37 GMT" */
+    private static final DateTimeFormatter date = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+            .withZone(ZoneOffset.UTC);
+
+    /** one entity tag out of a list of them, weak or not */
+    private static final Pattern tag = Pattern.compile("\\s*(W/)?(\"[^\"]*\")\\s*(,|$)");
+
+    private Conditions() {
+    }
+
+    /** @return the time as an http date */
+    static String date(long millis) {
+        return date.format(Instant.ofEpochMilli(millis));
+    }
+
+    /** @return the http date in milliseconds, -1 when it is not one */
+    static long date(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param ifNoneMatch the header, null when there is none
+     * @param ifModifiedSince the header, null when there is none, not looked at when
+     *                        there is an {@code If-None-Match}
+     * @return whether the client has the disc as it is already, to be answered 304
+     */
+    static boolean notModified(String ifNoneMatch, String ifModifiedSince, String etag, long modified) {
+        if (ifNoneMatch != null) {
+            return ifNoneMatch.trim().equals("*") || matches(ifNoneMatch, etag, false);
+        }
+        long since = date(ifModifiedSince);
+        // a date has seconds, the file's time may have less
+        return since != -1 && modified / 1000 <= since / 1000;
+    }
+
+    /**
+     * @param ifRange the header, null when there is none
+     * @return whether the range asked for is to be served, rather than the whole disc:
+     *         there is no condition, or it names the disc as it is, by a strong tag
+     *         or by the very time it was modified
+     */
+    static boolean rangeApplies(String ifRange, String etag, long modified) {
+        if (ifRange == null) {
+            return true;
+        }
+        String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            return matches(value, etag, true);
+        }
+        long date = date(value);
+        return date != -1 && date / 1000 == modified / 1000;
+    }
+
+    /**
+     * @param strong whether a weak tag never matches, rather than matching its strong one
+     * @return whether the list of tags has the given one
+     */
+    private static boolean matches(String tags, String etag, boolean strong) {
+        String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+        if (strong && etag.startsWith("W/")) {
+            return false;
+        }
+        Matcher m = tag.matcher(tags);
+        while (m.lookingAt()) {
+            if ((m.group(1) == null || !strong) && m.group(2).equals(opaque)) {
+                return true;
+            }
+            if (m.end() == tags.length()) {
+                break;
+            }
+            m.region(m.end(), tags.length());
+        }
+        return false;
+    }
+}
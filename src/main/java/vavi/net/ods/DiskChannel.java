@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Positional reads of a disc, through one channel opened on the first read and kept
+ * open for as long as the disc is shared. A read reads the range asked for and
+ * nothing else, and any number of threads may read at once: a positional read does
+ * not move a file pointer for anybody else.
+ * <p>
+ * A read on a thread interrupted closes the channel, for every thread reading it:
+ * the channel is let go of then, and the next read opens another.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class DiskChannel implements Closeable {
+
+    private final Path path;
+
+    /** null until the first read, and again after {@link #close()} */
+    private volatile FileChannel channel;
+
+    /** the same for reads nobody waits on, opened apart on the first of those */
+    private volatile AsynchronousFileChannel asynchronous;
+
+    /**
+     * held while a channel is opened or closed: a lock, not a monitor, so that a
+     * virtual thread opening a file does not pin the carrier it runs on
+     */
+    private final Lock lock = new ReentrantLock();
+
+    DiskChannel(Path path) {
+        this.path = path;
+    }
+
+    /** @return the open channel, opening it when nobody has yet */
+    FileChannel channel() throws IOException {
+        FileChannel channel = this.channel;
+        if (channel == null) {
+            lock.lock();
+            try {
+                channel = this.channel;
+                if (channel == null) {
+                    channel = FileChannel.open(path, StandardOpenOption.READ);
+                    this.channel = channel;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return channel;
+    }
+
+    /** @return the open channel for reads nobody waits on, opening it when nobody has yet */
+    AsynchronousFileChannel asynchronous() throws IOException {
+        AsynchronousFileChannel asynchronous = this.asynchronous;
+        if (asynchronous == null) {
+            lock.lock();
+            try {
+                asynchronous = this.asynchronous;
+                if (asynchronous == null) {
+                    asynchronous = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+                    this.asynchronous = asynchronous;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return asynchronous;
+    }
+
+    /**
+     * Fills the buffer from the given position on.
+     *
+     * @throws EOFException when the disc ends before the buffer is full
+     */
+    void read(ByteBuffer buffer, long position) throws IOException {
+        FileChannel channel = channel();
+        boolean retried = false;
+        while (buffer.hasRemaining()) {
+            int r;
+            try {
+                r = channel.read(buffer, position);
+            } catch (ClosedChannelException e) {
+                closed(channel);
+                // the thread interrupted would close the next channel as well
+                if (e instanceof ClosedByInterruptException || retried) {
+                    throw e;
+                }
+                retried = true;
+                channel = channel();
+                continue;
+            }
+            if (r == -1) {
+                throw new EOFException(String.format("%s ends before %d", path, position));
+            }
+            position += r;
+        }
+    }
+
+    /**
+     * Lets go of the channel found closed, unless another was opened in its place
+     * already, for the next read to open another.
+     */
+    void closed(FileChannel channel) {
+        lock.lock();
+        try {
+            if (this.channel == channel) {
+                this.channel = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return length bytes from the given position on */
+    byte[] read(long position, int length) throws IOException {
+        byte[] data = new byte[length];
+        read(ByteBuffer.wrap(data), position);
+        return data;
+    }
+
+    /** Closes the channel, the next read opens it again, e.g. on a new disc in a drive. */
+    @Override
+    public void close() throws IOException {
+        FileChannel channel;
+        AsynchronousFileChannel asynchronous;
+        lock.lock();
+        try {
+            channel = this.channel;
+            this.channel = null;
+            asynchronous = this.asynchronous;
+            this.asynchronous = null;
+        } finally {
+            lock.unlock();
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        if (asynchronous != null) {
+            asynchronous.close();
+        }
+    }
+}
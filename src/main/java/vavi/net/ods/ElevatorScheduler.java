@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+
+/**
+ * One queue of reads for one physical drive, worked off by one thread in the order
+ * of where they are on the disc, C-SCAN: from the head on towards the end of the
+ * disc, and then from the start again. Reads that overlap or touch are read as one.
+ * A drive asked for ranges all over the disc by several clients at once would
+ * otherwise spend its time seeking.
+ * <p>
+ * A read that waited {@link #MAX_WAIT} is read next, wherever it is, so one client
+ * reading the far end of the disc is not left waiting behind others reading on.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class ElevatorScheduler implements Closeable {
+
+    static final Logger logging = Logger.getLogger(ElevatorScheduler.class.getName());
+
+    /** how long a read waits at most before it is read, wherever it is */
+    static final long MAX_WAIT = TimeUnit.MILLISECONDS.toNanos(500);
+
+    /** the most reads merged into one read */
+    static final int MAX_MERGE = 4 * 1024 * 1024;
+
+    /** what actually reads the drive */
+    interface Reader {
+        byte[] read(long position, int length) throws IOException;
+    }
+
+    private static final class Request {
+        final long start;
+        final long end;
+        final long sequence;
+        final long queued = System.nanoTime();
+        final CompletableFuture<byte[]> result = new CompletableFuture<>();
+
+        Request(long start, long end, long sequence) {
+            this.start = start;
+            this.end = end;
+            this.sequence = sequence;
+        }
+    }
+
+    private final Reader reader;
+
+    /** the reads waiting, in the order of where they are on the disc */
+    private final NavigableSet<Request> pending = new TreeSet<>(
+            Comparator.<Request>comparingLong(r -> r.start).thenComparingLong(r -> r.sequence));
+
+    private final Lock lock = new ReentrantLock();
+
+    private final Condition queued = lock.newCondition();
+
+    private long sequence;
+
+    /** where the last read ended */
+    private long head;
+
+    private volatile boolean closed;
+
+    private final Thread worker;
+
+    /** @param name what the drive is called, for the thread's name */
+    ElevatorScheduler(String name, Reader reader) {
+        this.reader = reader;
+        this.worker = new Thread(this::work, "ods-elevator-" + name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /** @return length bytes from the given position on, read when their turn comes */
+    byte[] read(long position, int length) throws IOException {
+        Request request;
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("closed");
+            }
+            request = new Request(position, position + length - 1, sequence++);
+            pending.add(request);
+            queued.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            return request.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void work() {
+        while (true) {
+            List<Request> batch;
+            lock.lock();
+            try {
+                while (pending.isEmpty() && !closed) {
+                    queued.awaitUninterruptibly();
+                }
+                if (closed) {
+                    break;
+                }
+                batch = next();
+            } finally {
+                lock.unlock();
+            }
+
+            serve(batch);
+        }
+
+        // whoever is still waiting is told so
+        lock.lock();
+        try {
+            pending.forEach(r -> r.result.completeExceptionally(new IOException("closed")));
+            pending.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the reads to read next, taken off the queue: the one that waited too
+     *         long, or else the next one from the head on, with the ones after it
+     *         that overlap or touch it
+     */
+    private List<Request> next() {
+        long now = System.nanoTime();
+        Request first = null;
+        for (Request r : pending) {
+            if (now - r.queued > MAX_WAIT && (first == null || r.queued < first.queued)) {
+                first = r;
+            }
+        }
+        if (first == null) {
+            first = pending.ceiling(new Request(head, head, -1));
+            if (first == null) {
+                first = pending.first(); // the end of the disc, back to the start
+            }
+        }
+
+        List<Request> batch = new ArrayList<>();
+        batch.add(first);
+        pending.remove(first);
+        long end = first.end;
+        // the ones starting inside or right after what is read already
+        for (Request r : new ArrayList<>(pending.tailSet(first, false))) {
+            if (r.start > end + 1 || Math.max(end, r.end) - first.start + 1 > MAX_MERGE) {
+                break;
+            }
+            batch.add(r);
+            pending.remove(r);
+            end = Math.max(end, r.end);
+        }
+        return batch;
+    }
+
+    /** Reads the batch in one read, and hands each read its part. */
+    private void serve(List<Request> batch) {
+        long start = batch.get(0).start;
+        long end = batch.stream().mapToLong(r -> r.end).max().getAsLong();
+        try {
+            byte[] data = reader.read(start, (int) (end - start + 1));
+            head = end + 1;
+            for (Request r : batch) {
+                byte[] part = new byte[(int) (r.end - r.start + 1)];
+                System.arraycopy(data, (int) (r.start - start), part, 0, part.length);
+                r.result.complete(part);
+            }
+        } catch (IOException | RuntimeException e) {
+            batch.forEach(r -> r.result.completeExceptionally(e));
+        }
+    }
+
+    /** @return how many reads are waiting */
+    int pending() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            queued.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
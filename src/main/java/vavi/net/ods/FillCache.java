@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * A local copy of the disc in a drive, filled as the disc is read: a sparse file as
+ * big as the disc, and which blocks of it are there already. A read of blocks that
+ * are there is read out of the file, any other goes to the drive and what it read is
+ * written to the file for the next client. Once every block is there, the drive is
+ * not read at all.
+ * <p>
+ * The rest of the disc can be ripped while nobody reads it, so that after one pass
+ * the drive spins only for what nobody read yet. The file is gone once this is
+ * closed, which is when the disc in the drive changes.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class FillCache implements Closeable {
+
+    static final Logger logging = Logger.getLogger(FillCache.class.getName());
+
+    /** what is read off the drive at least, and marked as there or not */
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    /** how long nobody has to read for a rip to go on */
+    static final long IDLE = TimeUnit.SECONDS.toNanos(2);
+
+    private final ElevatorScheduler.Reader drive;
+
+    private final FileChannel file;
+
+    private final long size;
+
+    /** the blocks in the file */
+    private final BitSet filled;
+
+    private final int blocks;
+
+    private final Lock lock = new ReentrantLock();
+
+    /** when a client last read */
+    private volatile long used = System.nanoTime();
+
+    private volatile Thread ripper;
+
+    /**
+     * @param directory where to make the file
+     * @param name what to call it, e.g. after the drive
+     * @param size how big the disc is
+     * @param drive what reads the drive
+     */
+    FillCache(Path directory, String name, long size, ElevatorScheduler.Reader drive) throws IOException {
+        Files.createDirectories(directory);
+        Path path = Files.createTempFile(directory, name, ".img");
+        this.file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                     StandardOpenOption.SPARSE, StandardOpenOption.DELETE_ON_CLOSE);
+        this.size = size;
+        this.blocks = (int) ((size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        this.filled = new BitSet(blocks);
+        this.drive = drive;
+    }
+
+    /** @return length bytes from the given position on, out of the file once they are in it */
+    byte[] read(long position, int length) throws IOException {
+        used = System.nanoTime();
+        fill((int) (position / BLOCK_SIZE), (int) ((position + length - 1) / BLOCK_SIZE));
+
+        byte[] data = new byte[length];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            int r = file.read(buffer, position + buffer.position());
+            if (r == -1) {
+                throw new EOFException("the copy ends before " + (position + buffer.position()));
+            }
+        }
+        return data;
+    }
+
+    /** Reads the blocks between the two, both included, off the drive, those not in the file yet. */
+    private void fill(int first, int last) throws IOException {
+        int block = first;
+        while (block <= last) {
+            int from, to;
+            lock.lock();
+            try {
+                from = filled.nextClearBit(block);
+                if (from > last) {
+                    return;
+                }
+                int next = filled.nextSetBit(from);
+                to = next == -1 || next > last ? last : next - 1;
+            } finally {
+                lock.unlock();
+            }
+
+            long position = (long) from * BLOCK_SIZE;
+            long end = Math.min((long) (to + 1) * BLOCK_SIZE, size);
+            ByteBuffer data = ByteBuffer.wrap(drive.read(position, (int) (end - position)));
+            while (data.hasRemaining()) {
+                file.write(data, position + data.position());
+            }
+
+            lock.lock();
+            try {
+                filled.set(from, to + 1);
+            } finally {
+                lock.unlock();
+            }
+            block = to + 1;
+        }
+    }
+
+    /** @return whether every block is in the file */
+    boolean complete() {
+        lock.lock();
+        try {
+            return filled.cardinality() == blocks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Starts ripping what nobody read yet, a block at a time whenever nobody reads for a while. */
+    void rip() {
+        Thread ripper = new Thread(() -> {
+            try {
+                for (int block = 0; block < blocks && !Thread.currentThread().isInterrupted(); ) {
+                    if (System.nanoTime() - used < IDLE) {
+                        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(IDLE));
+                        continue;
+                    }
+                    lock.lock();
+                    try {
+                        block = filled.nextClearBit(block);
+                    } finally {
+                        lock.unlock();
+                    }
+                    if (block < blocks) {
+                        fill(block, block);
+                    }
+                }
+                if (complete()) {
+                    logging.info("ripped " + size + " bytes");
+                }
+            } catch (InterruptedException e) {
+                // closed
+            } catch (IOException e) {
+                logging.log(Level.FINE, e.getMessage(), e);
+            }
+        }, "ods-rip");
+        ripper.setDaemon(true);
+        ripper.setPriority(Thread.MIN_PRIORITY);
+        this.ripper = ripper;
+        ripper.start();
+    }
+
+    /** Stops ripping and removes the file. */
+    @Override
+    public void close() throws IOException {
+        Thread ripper = this.ripper;
+        if (ripper != null) {
+            ripper.interrupt();
+        }
+        file.close();
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+
+
+/**
+ * An HFS+ volume, on its own, in a partition of an Apple partition map or a GPT, or
+ * wrapped in an HFS volume, as in a .dmg or on the Mac side of a hybrid cd. The
+ * volume header has the block size and how many blocks there are, the name is not
+ * in it though: it is the name of the root folder, the first record of the first
+ * leaf of the catalog. Classic HFS has the name in its master directory block.
+ * <p>
+ * Everything is big endian.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+final class HfsVolume {
+
+    /** where the volume header is in a volume */
+    static final int HEADER = 1024;
+
+    static final int HFS_PLUS = 0x482b; // "H+"
+    static final int HFSX = 0x4858; // "HX"
+    static final int HFS = 0x4244; // "BD"
+
+    /** the parent of the root folder, whose name is the name of the volume */
+    static final int ROOT_PARENT = 1;
+
+    /** the type of an HFS+ partition in a GPT, as it is on disk */
+    static final byte[] HFS_PLUS_GUID = {
+        0x00, 0x53, 0x46, 0x48, 0x00, 0x00, (byte) 0xaa, 0x11,
+        (byte) 0xaa, 0x11, 0x00, 0x30, 0x65, 0x43, (byte) 0xec, (byte) 0xac
+    };
+
+    /** how many partitions are looked at at most */
+    static final int PARTITIONS = 16;
+
+    /** how big a GPT entry is at most, a bigger one being garbage */
+    static final int MAX_ENTRY = 4096;
+
+    /** what classic HFS names are in, on the machines that wrote them */
+    private static final Charset macRoman = Charset.isSupported("x-MacRoman") ? Charset.forName("x-MacRoman") : StandardCharsets.ISO_8859_1;
+
+    private HfsVolume() {
+    }
+
+    /** @return the volume, null when there is no HFS+ or HFS volume where one is looked for */
+    static Volume read(ElevatorScheduler.Reader reader) throws IOException {
+        byte[] head = reader.read(0, 4096);
+        if (head.length < HEADER + 512) {
+            return null;
+        }
+        Volume volume = at(reader, 0, ByteBuffer.wrap(head, HEADER, 512).slice(), true);
+        if (volume != null) {
+            return volume;
+        }
+        for (long start : partitions(reader, ByteBuffer.wrap(head))) {
+            volume = at(reader, start, null, true);
+            if (volume != null) {
+                return volume;
+            }
+        }
+        return null;
+    }
+
+    /** @return where the partitions that may be HFS start, of an Apple partition map or a GPT */
+    private static long[] partitions(ElevatorScheduler.Reader reader, ByteBuffer head) throws IOException {
+        long[] starts = new long[PARTITIONS];
+        int n = 0;
+        if (head.getShort(0) == 0x4552 && head.getShort(512) == 0x504d) { // "ER", "PM"
+            // the entries are 512 bytes apart, and count 512 byte blocks
+            int count = Math.max(0, Math.min(head.getInt(512 + 4), PARTITIONS));
+            byte[] map = reader.read(512, count * 512);
+            for (int i = 0; i < count && (i + 1) * 512 <= map.length; i++) {
+                ByteBuffer entry = ByteBuffer.wrap(map, i * 512, 512).slice();
+                String type = new String(map, i * 512 + 48, 32, StandardCharsets.US_ASCII);
+                if (entry.getShort(0) == 0x504d && type.startsWith("Apple_HFS")) {
+                    starts[n++] = (entry.getInt(8) & 0xffff_ffffL) * 512;
+                }
+            }
+        } else if ("EFI PART".equals(new String(head.array(), 512, 8, StandardCharsets.US_ASCII))) {
+            long lba = Long.reverseBytes(head.getLong(512 + 72));
+            int count = Math.min(Integer.reverseBytes(head.getInt(512 + 80)), PARTITIONS);
+            int size = Integer.reverseBytes(head.getInt(512 + 84));
+            if (size < 128 || size > MAX_ENTRY || count <= 0 || lba < 0 || lba > Long.MAX_VALUE / 512) {
+                return new long[0];
+            }
+            byte[] entries = reader.read(lba * 512, count * size);
+            for (int i = 0; i < count && (i + 1) * size <= entries.length; i++) {
+                ByteBuffer entry = ByteBuffer.wrap(entries, i * size, size).slice();
+                if (ByteBuffer.wrap(HFS_PLUS_GUID).equals(entry.duplicate().limit(16))) {
+                    starts[n++] = Long.reverseBytes(entry.getLong(32)) * 512;
+                }
+            }
+        }
+        long[] found = new long[n];
+        System.arraycopy(starts, 0, found, 0, n);
+        return found;
+    }
+
+    /**
+     * @param start where the volume starts on the disc
+     * @param header its volume header, null to read it
+     * @param unwrap whether an HFS+ volume wrapped in an HFS one is looked for in it,
+     *               not for one wrapped again, for a wrapper pointing at itself not to
+     *               be gone round for ever
+     * @return the volume, null when there is none there
+     */
+    private static Volume at(ElevatorScheduler.Reader reader, long start, ByteBuffer header, boolean unwrap) throws IOException {
+        if (header == null) {
+            byte[] read = reader.read(start + HEADER, 512);
+            if (read.length < 512) {
+                return null;
+            }
+            header = ByteBuffer.wrap(read);
+        }
+
+        int signature = header.getShort(0) & 0xffff;
+        if (signature == HFS_PLUS || signature == HFSX) {
+            long blockSize = header.getInt(40) & 0xffff_ffffL;
+            long blocks = header.getInt(44) & 0xffff_ffffL;
+            if (blockSize == 0 || blockSize % 512 != 0) {
+                return null;
+            }
+            return volume(name(reader, start, header, blockSize), start, blockSize, blocks);
+        } else if (signature == HFS) {
+            long blockSize = header.getInt(20) & 0xffff_ffffL;
+            long first = (header.getShort(28) & 0xffff) * 512L;
+            if (blockSize == 0 || blockSize % 512 != 0) {
+                return null;
+            }
+            long embedded = start + first + (header.getShort(126) & 0xffff) * blockSize;
+            if (unwrap && (header.getShort(124) & 0xffff) == HFS_PLUS && embedded > start) {
+                // an HFS+ volume wrapped in an HFS one
+                Volume volume = at(reader, embedded, null, false);
+                if (volume != null) {
+                    return volume;
+                }
+            }
+            int length = Math.min(header.get(36) & 0xff, 27);
+            String name = length == 0 ? null : new String(header.array(), header.arrayOffset() + 37, length, macRoman);
+            long bytes = first + (header.getShort(18) & 0xffff) * blockSize + 1024; // and the alternate mdb
+            return volume(name, start, 512, (bytes + 511) / 512);
+        }
+        return null;
+    }
+
+    /** @return the volume as big as from the start of the disc to its end */
+    private static Volume volume(String name, long start, long blockSize, long blocks) {
+        if (start % blockSize == 0) {
+            return new Volume(name, blockSize, start / blockSize + blocks);
+        } else {
+            return new Volume(name, 512, (start + blockSize * blocks + 511) / 512);
+        }
+    }
+
+    /**
+     * @return the name of the root folder, the key of the first leaf record of the
+     *         catalog, null when it is not there
+     */
+    private static String name(ElevatorScheduler.Reader reader, long start, ByteBuffer header, long blockSize) throws IOException {
+        // the catalog file fork: its size, and where its first eight extents are
+        int fork = 272;
+        long first = catalog(header, fork, 0, blockSize);
+        if (first < 0) {
+            return null;
+        }
+        byte[] node = reader.read(start + first, 512);
+        if (node.length < 512) {
+            return null;
+        }
+        ByteBuffer headerNode = ByteBuffer.wrap(node);
+        if (headerNode.get(8) != 1) { // a header node
+            return null;
+        }
+        long firstLeaf = headerNode.getInt(14 + 10) & 0xffff_ffffL;
+        int nodeSize = headerNode.getShort(14 + 18) & 0xffff;
+        if (firstLeaf == 0 || nodeSize < 512) {
+            return null;
+        }
+
+        long offset = catalog(header, fork, firstLeaf * nodeSize, blockSize);
+        if (offset < 0) {
+            return null;
+        }
+        byte[] read = reader.read(start + offset, nodeSize);
+        if (read.length < nodeSize) {
+            return null;
+        }
+        ByteBuffer leaf = ByteBuffer.wrap(read);
+        if (leaf.get(8) != -1 || leaf.getShort(10) == 0) { // a leaf node, with records
+            return null;
+        }
+        int record = leaf.getShort(nodeSize - 2) & 0xffff;
+        if (record + 8 > nodeSize || leaf.getInt(record + 2) != ROOT_PARENT) {
+            return null;
+        }
+        int length = leaf.getShort(record + 6) & 0xffff;
+        if (length == 0 || record + 8 + length * 2 > nodeSize) {
+            return null;
+        }
+        String name = new String(read, record + 8, length * 2, StandardCharsets.UTF_16BE);
+        // HFS+ keeps names decomposed
+        return Normalizer.normalize(name, Normalizer.Form.NFC);
+    }
+
+    /** @return where the byte of the catalog file is in the volume, -1 when not in its first eight extents */
+    private static long catalog(ByteBuffer header, int fork, long position, long blockSize) {
+        for (int i = 0; i < 8; i++) {
+            long first = header.getInt(fork + 16 + i * 8) & 0xffff_ffffL;
+            long count = header.getInt(fork + 16 + i * 8 + 4) & 0xffff_ffffL;
+            if (position < count * blockSize) {
+                return first * blockSize + position;
+            }
+            position -= count * blockSize;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * How long something took, counted into buckets of up to so many seconds each, the
+ * way prometheus takes a histogram. Counting is a striped add and nothing else, for
+ * threads timing their reads not to wait on each other.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+final class Histogram {
+
+    /** for reads of a disc, from a sector out of the os cache to a drive spinning up */
+    static final double[] READS = {0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5};
+
+    /** for listing the images and the drives */
+    static final double[] REFRESHES = {0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30, 60};
+
+    /** the upper bounds of the buckets, in seconds, ascending */
+    private final double[] bounds;
+
+    /** the bound in nanoseconds of each bucket */
+    private final long[] limits;
+
+    /** what fell in each bucket alone, and past the last one */
+    private final LongAdder[] counts;
+
+    private final LongAdder sum = new LongAdder();
+
+    Histogram(double[] bounds) {
+        this.bounds = bounds;
+        this.limits = new long[bounds.length];
+        for (int i = 0; i < bounds.length; i++) {
+            limits[i] = (long) (bounds[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+        this.counts = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /** Counts something that took the given nanoseconds. */
+    void observe(long nanos) {
+        int i = 0;
+        while (i < limits.length && nanos > limits[i]) {
+            i++;
+        }
+        counts[i].increment();
+        sum.add(nanos);
+    }
+
+    /** @return how many were counted */
+    long count() {
+        long count = 0;
+        for (LongAdder c : counts) {
+            count += c.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Writes the buckets, the sum and the count, in prometheus' text format.
+     *
+     * @param name what the histogram is called
+     * @param labels the labels every line of it carries, e.g. {@code source="image"},
+     *               empty for none
+     */
+    void write(StringBuilder out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += counts[i].sum();
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append(bounds[i]).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        cumulative += counts[bounds.length].sum();
+        out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+        String braced = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(braced).append(' ').append(sum.sum() / 1e9).append('\n');
+        out.append(name).append("_count").append(braced).append(' ').append(cumulative).append('\n');
+    }
+}
@@ -6,11 +6,13 @@
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.HexFormat;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,42 +33,48 @@ public class Image extends HttpServlet {
         this.server = server;
     }
 
+    /**
+     * Stores the body as an image named by the "image" parameter, and serves it as
+     * soon as it is all there: {@code POST /images?image=name.iso}.
+     */
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String image = req.getParameter("image");
-        // Upload image to the image bucket
-        int size = 0;
-        boolean success = false;
-        try {
-            Path path = Paths.get(server.root(), image);
-            if (!tools.is_image(path)) {
-                resp.sendError(403, "Unsupported image file");
-                return;
-            }
-            try (OutputStream out = resp.getOutputStream();
-                 InputStream in = Files.newInputStream(path)) {
-                while (true) {
-                    byte[] data = new byte[8192];
-                    int r = in.read(data, 0, data.length);
+        if (!Upload.allowed(image, tools)) {
+            resp.sendError(403, "Unsupported image file");
+            return;
+        }
 
-                    if (r == -1) {
-                        break;
-                    }
+        Path root = Paths.get(server.root());
+        long length = req.getContentLengthLong();
+        if (length > 0 && length > Files.getFileStore(root).getUsableSpace()) {
+            resp.sendError(507, "No room for " + length + " bytes");
+            return;
+        }
 
-                    size += r;
-                    out.write(data, 0, r);
-                }
-            }
-            this.server.update();
-            success = true;
+        Upload upload;
+        try (InputStream in = req.getInputStream()) {
+            upload = Upload.store(in, root, image);
+        } catch (FileAlreadyExistsException e) {
+            resp.sendError(409, "There is an image of the name already");
+            return;
         } catch (IOException e) {
             logging.log(Level.SEVERE, "Failed to store upload", e);
             resp.sendError(500);
             return;
         }
 
-        resp.setHeader("size", String.valueOf(size));
-        resp.setHeader("success", String.valueOf(success));
+        try {
+            server.added(upload);
+        } catch (IOException e) {
+            logging.log(Level.WARNING, "stored, not catalogued yet: " + upload.path(), e);
+        }
+        logging.info(String.format("uploaded %s, %d bytes, sha-256 %s", upload.path(), upload.size(), upload.hash()));
+
+        resp.setStatus(201);
+        resp.setHeader("size", String.valueOf(upload.size()));
+        resp.setHeader("success", String.valueOf(true));
+        resp.setHeader("Repr-Digest", "sha-256=:" + Base64.getEncoder().encodeToString(HexFormat.of().parseHex(upload.hash())) + ":");
     }
 
     @Override
@@ -0,0 +1,402 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import vavi.net.ods.OnlineDisk.CompressedImage;
+import vavi.net.ods.OnlineDisk.DiskImage;
+
+
+/**
+ * What is known of each image in a directory, kept in a file next to them: the label,
+ * the size it is served as, its volume's geometry, how it is stored and a hash of its
+ * content, under the name, size, modification time and file key of the image. An
+ * image whose file is as it was when it was indexed is not read again, on any start
+ * of the server; one that changed is read again, and the index with it.
+ * <p>
+ * {@link #main} builds or refreshes the index of a library, reading the images on
+ * as many threads as there are cores, for a server to start on it in seconds.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class ImageIndex {
+
+    static final Logger logging = Logger.getLogger(ImageIndex.class.getName());
+
+    /** the name of the index in the images directory, a dot file not to be listed */
+    static final String NAME = ".ods-index";
+
+    /** the first line of an index, for a later one to tell what it reads */
+    static final String HEADER = "# vavi-net-ods image index 1";
+
+    /** how an image is stored, when it is not compressed */
+    static final String PLAIN = "plain";
+
+    /**
+     * What is known of one image.
+     *
+     * @param name the file name of the image
+     * @param length how big the file is
+     * @param modified when it was last modified, in milliseconds
+     * @param fileKey what the file system tells the file by, "" for nothing
+     * @param label the volume label, null for none read
+     * @param size how big the disc is served as, the iso for a compressed image
+     * @param blockSize the logical block size of the volume, 0 for none read
+     * @param blocks how many blocks the volume is, 0 for none read
+     * @param format how the image is stored, {@link #PLAIN} or a compression
+     * @param hash the sha-256 of the file, null for not computed
+     */
+    record Entry(String name, long length, long modified, String fileKey, String label, long size,
+                 long blockSize, long blocks, String format, String hash) {
+
+        /** @return whether the file is as it was when this was read of it */
+        boolean fresh(BasicFileAttributes attributes) {
+            return length == attributes.size() &&
+                    modified == attributes.lastModifiedTime().toMillis() &&
+                    fileKey.equals(ImageIndex.fileKey(attributes));
+        }
+    }
+
+    private final Path file;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /** whether there is anything not written out yet */
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    private final Tools tools;
+
+    /** @param directory the images directory the index is of, and in */
+    ImageIndex(Path directory, Tools tools) {
+        this.file = directory.resolve(NAME);
+        this.tools = tools;
+    }
+
+    /** @return the file key as kept in the index, "" when the file system has none */
+    static String fileKey(BasicFileAttributes attributes) {
+        Object key = attributes.fileKey();
+        return key != null ? key.toString() : "";
+    }
+
+    /**
+     * Reads the index, none there being an empty one. Lines that do not make sense
+     * are left out, the images they are of are read again.
+     */
+    ImageIndex load() throws IOException {
+        entries.clear();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                logging.warning("not an index, ignored: " + file);
+                return this;
+            }
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 10) {
+                    continue;
+                }
+                try {
+                    Entry entry = new Entry(unescape(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                            unescape(fields[3]), fields[4].isEmpty() ? null : unescape(fields[4]), Long.parseLong(fields[5]),
+                            Long.parseLong(fields[6]), Long.parseLong(fields[7]), fields[8], fields[9].isEmpty() ? null : fields[9]);
+                    entries.put(entry.name(), entry);
+                } catch (NumberFormatException e) {
+                    logging.fine("broken index line: " + line);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            logging.fine("no index yet: " + file);
+        }
+        dirty.set(false);
+        return this;
+    }
+
+    /** Writes the index when anything changed, to a file beside it first and then over it. */
+    void save() throws IOException {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        Path temporary = file.resolveSibling(NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Entry entry : new ArrayList<>(entries.values())) {
+                writer.write(String.join("\t",
+                        escape(entry.name()), String.valueOf(entry.length()), String.valueOf(entry.modified()),
+                        escape(entry.fileKey()), entry.label() == null ? "" : escape(entry.label()), String.valueOf(entry.size()),
+                        String.valueOf(entry.blockSize()), String.valueOf(entry.blocks()), entry.format(),
+                        entry.hash() == null ? "" : entry.hash()));
+                writer.newLine();
+            }
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** @return what is known of the image, null when nothing is or its file changed since */
+    Entry get(Path image, BasicFileAttributes attributes) {
+        Entry entry = entries.get(image.getFileName().toString());
+        return entry != null && entry.fresh(attributes) ? entry : null;
+    }
+
+    void put(Entry entry) {
+        if (!entry.equals(entries.put(entry.name(), entry))) {
+            dirty.set(true);
+        }
+    }
+
+    /** Forgets the image, gone from the directory. */
+    void forget(Path image) {
+        if (entries.remove(image.getFileName().toString()) != null) {
+            dirty.set(true);
+        }
+    }
+
+    /** Forgets the images not among the ones given, gone from the directory. */
+    void retain(List<Path> images) {
+        List<String> names = images.stream().map(p -> p.getFileName().toString()).toList();
+        if (entries.keySet().retainAll(names)) {
+            dirty.set(true);
+        }
+    }
+
+    /** @return the number of images known */
+    int size() {
+        return entries.size();
+    }
+
+    /** @return the image in the file, as the iso it is when it is compressed */
+    OnlineDisk image(Path path, boolean mapped) {
+        CompressedIso.Format format = tools.compression(path);
+        return format != null ? new CompressedImage(path, format) : new DiskImage(path, mapped);
+    }
+
+    /**
+     * @return the image, told its label and size out of the index when its file is as
+     *         it was, read for them and indexed again when it is not
+     */
+    OnlineDisk open(Path path, boolean mapped) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        OnlineDisk disk = image(path, mapped);
+        Entry entry = get(path, attributes);
+        if (entry != null) {
+            disk.known(entry.label(), entry.size());
+        } else {
+            put(read(disk, attributes, ""));
+        }
+        return disk;
+    }
+
+    /**
+     * Indexes an image just written, with what was read of it as it was written: the
+     * volume descriptors are read off the file only when they were not.
+     *
+     * @param volume what the volume descriptors say, null when nothing was read of them
+     */
+    void put(Path image, Volume volume, String hash) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(image, BasicFileAttributes.class);
+        if (volume == null || volume.label() == null || tools.compression(image) != null) {
+            try (OnlineDisk disk = image(image, false)) {
+                put(read(disk, attributes, hash));
+            }
+        } else {
+            put(new Entry(image.getFileName().toString(), attributes.size(), attributes.lastModifiedTime().toMillis(),
+                    fileKey(attributes), volume.label(), attributes.size(), volume.blockSize(), volume.blocks(), PLAIN, hash));
+        }
+    }
+
+    /**
+     * @param hash the hash known of the file already, null to compute it, and the
+     *        hashes of the chunks of a plain one with it, "" not to
+     * @return what is known of the image, read out of it
+     */
+    Entry read(OnlineDisk disk, BasicFileAttributes attributes, String hash) throws IOException {
+        Path path = disk.path();
+        long size = disk.size();
+        Volume volume = Volume.probe(disk.reader());
+        String label = volume != null && volume.label() != null ? volume.label() : disk.label();
+        disk.known(label, size);
+        CompressedIso.Format format = tools.compression(path);
+        if (hash == null) {
+            // a plain file is the disc as it is served, and its chunks are hashed in
+            // the same pass, for verify not to wait for the scrubber
+            ChunkHashes.Builder chunks = format == null ? new ChunkHashes.Builder() : null;
+            hash = hash(path, chunks);
+            if (chunks != null) {
+                ChunkHashes hashes = chunks.build(attributes);
+                hashes.save(path);
+                disk.hashes(hashes);
+            }
+        }
+        return new Entry(path.getFileName().toString(), attributes.size(), attributes.lastModifiedTime().toMillis(),
+                fileKey(attributes), label, size,
+                volume != null ? volume.blockSize() : 0, volume != null ? volume.blocks() : 0,
+                format != null ? format.name().toLowerCase() : PLAIN,
+                hash.isEmpty() ? null : hash);
+    }
+
+    /** @return the sha-256 of the file, in hex */
+    static String hash(Path path) throws IOException {
+        return hash(path, null);
+    }
+
+    /**
+     * @param chunks what hashes the chunks of the file as well, null for nothing
+     * @return the sha-256 of the file, in hex
+     */
+    private static String hash(Path path, ChunkHashes.Builder chunks) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[1024 * 1024];
+        try (InputStream in = Files.newInputStream(path)) {
+            int r;
+            while ((r = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, r);
+                if (chunks != null) {
+                    chunks.update(buffer, 0, r);
+                }
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Indexes the images of the directory not indexed as they are, on as many threads
+     * as asked for, and forgets the ones gone.
+     *
+     * @param threads how many images are read at once
+     * @param hash whether the content of an image is hashed, which reads all of it
+     * @return how many images were read
+     */
+    int refresh(Path directory, int threads, boolean hash) throws IOException {
+        List<Path> images = tools.listImages(directory.toString());
+        retain(images);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> reads = new ArrayList<>();
+            for (Path image : images) {
+                reads.add(executor.submit(() -> refresh(image, hash)));
+            }
+            int read = 0;
+            for (Future<Boolean> future : reads) {
+                try {
+                    if (future.get()) {
+                        read++;
+                    }
+                } catch (Exception e) {
+                    logging.log(Level.WARNING, e.getMessage(), e);
+                }
+            }
+            return read;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /** @return whether the image had to be read */
+    private boolean refresh(Path image, boolean hash) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(image, BasicFileAttributes.class);
+        Entry entry = get(image, attributes);
+        // a plain image indexed before its chunks were hashed is read again for them
+        boolean chunked = tools.compression(image) != null || Files.exists(ChunkHashes.file(image));
+        if (entry != null && (!hash || entry.hash() != null && chunked)) {
+            return false;
+        }
+        try (OnlineDisk disk = image(image, false)) {
+            String known = entry != null && chunked ? entry.hash() : null;
+            put(read(disk, attributes, hash ? known : ""));
+        }
+        logging.info("indexed " + image);
+        return true;
+    }
+
+    /** the tab and the line separator fields are separated by, and what escapes them */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                c = value.charAt(++i);
+                sb.append(c == 't' ? '\t' : c == 'n' ? '\n' : c == 'r' ? '\r' : c);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Builds or refreshes the index of an images directory.
+     * <pre>
+     * ImageIndex [-j threads] [--no-hash] [directory]
+     * </pre>
+     * the directory defaults to the one the server is configured to serve.
+     */
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean hash = true;
+        String directory = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "-j":
+                threads = Integer.parseInt(args[++i]);
+                break;
+            case "--no-hash":
+                hash = false;
+                break;
+            default:
+                directory = args[i];
+                break;
+            }
+        }
+        Path root = Paths.get(Objects.requireNonNullElseGet(directory, () -> OdsServer.config.get("root", "/mnt/images")));
+
+        long start = System.currentTimeMillis();
+        ImageIndex index = new ImageIndex(root, Tools.getInstance()).load();
+        int read = index.refresh(root, threads, hash);
+        index.save();
+        logging.info(String.format("%d images indexed, %d read, in %d ms", index.size(), read, System.currentTimeMillis() - start));
+    }
+}
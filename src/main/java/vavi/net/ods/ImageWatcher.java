@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Tells of the files of the images directory that changed, as the file system tells
+ * of them, for the catalog to take in those and nothing else. A file being copied in
+ * changes many times over: the files that changed are told of once nothing changed
+ * for {@link #QUIET}. When the file system lost count, and every so often anyway in
+ * case it did without saying, everything is told to have changed.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class ImageWatcher implements Closeable {
+
+    static final Logger logging = Logger.getLogger(ImageWatcher.class.getName());
+
+    /** how long nothing changes before what changed is told of */
+    static final long QUIET = TimeUnit.SECONDS.toMillis(1);
+
+    /** what is told of changes */
+    interface Listener {
+
+        /** the files given were added, changed or are gone */
+        void changed(Set<Path> files) throws IOException;
+
+        /** anything may have changed */
+        void reconcile() throws IOException;
+    }
+
+    private final Path directory;
+
+    private final Listener listener;
+
+    private final WatchService watcher;
+
+    private final Thread thread;
+
+    /** does the reconciling every so often, null for never */
+    private final ScheduledExecutorService reconciler;
+
+    /**
+     * @param reconcile how many seconds apart everything is told to have changed, 0 for never
+     */
+    ImageWatcher(Path directory, Listener listener, long reconcile) throws IOException {
+        this.directory = directory;
+        this.listener = listener;
+        this.watcher = directory.getFileSystem().newWatchService();
+        directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                           StandardWatchEventKinds.ENTRY_MODIFY);
+
+        this.thread = new Thread(this::watch, "ods-watch");
+        thread.setDaemon(true);
+        thread.start();
+
+        if (reconcile > 0) {
+            reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "ods-reconcile");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+            reconciler.scheduleWithFixedDelay(this::reconcile, reconcile, reconcile, TimeUnit.SECONDS);
+        } else {
+            reconciler = null;
+        }
+    }
+
+    private void watch() {
+        Set<Path> changed = new LinkedHashSet<>();
+        boolean overflow = false;
+        try {
+            while (true) {
+                // wait for as long as it takes while nothing is pending, for the quiet otherwise
+                WatchKey key = changed.isEmpty() && !overflow ? watcher.take() : watcher.poll(QUIET, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    if (overflow) {
+                        reconcile();
+                    } else {
+                        tell(changed);
+                    }
+                    changed = new LinkedHashSet<>();
+                    overflow = false;
+                    continue;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflow = true;
+                    } else {
+                        changed.add(directory.resolve((Path) event.context()));
+                    }
+                }
+                if (!key.reset()) {
+                    logging.warning("the images directory is gone: " + directory);
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private void tell(Set<Path> changed) {
+        try {
+            listener.changed(changed);
+        } catch (IOException | RuntimeException e) {
+            logging.log(Level.WARNING, e.getMessage(), e);
+        }
+    }
+
+    private void reconcile() {
+        try {
+            listener.reconcile();
+        } catch (IOException | RuntimeException e) {
+            logging.log(Level.WARNING, e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reconciler != null) {
+            reconciler.shutdownNow();
+        }
+        watcher.close();
+        thread.interrupt();
+    }
+}
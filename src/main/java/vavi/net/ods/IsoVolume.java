@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * The volume descriptors of an iso 9660 disc, from sector 16 on: the primary one for
+ * the volume id, the volume space size and the logical block size, and a Joliet one,
+ * a supplementary descriptor with a UCS-2 volume id, for the label as it was meant
+ * rather than upper cased and cut to d-characters. The descriptors are read in one
+ * read, the set of them rarely takes more than a few sectors.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+final class IsoVolume {
+
+    /** where the descriptors are, whatever the logical block size */
+    static final int SECTOR_SIZE = 2048;
+
+    /** the first sector of the descriptors, after the system area */
+    static final int FIRST = 16;
+
+    /** how many descriptors are read, before giving up on a terminator */
+    static final int DESCRIPTORS = 16;
+
+    static final int PRIMARY = 1;
+
+    static final int SUPPLEMENTARY = 2;
+
+    static final int TERMINATOR = 255;
+
+    private IsoVolume() {
+    }
+
+    /** @return the volume, null when there is no primary volume descriptor */
+    static Volume read(ElevatorScheduler.Reader reader) throws IOException {
+        byte[] sectors = reader.read((long) FIRST * SECTOR_SIZE, DESCRIPTORS * SECTOR_SIZE);
+
+        String label = null;
+        String joliet = null;
+        long blockSize = 0;
+        long blocks = 0;
+        for (int offset = 0; offset + SECTOR_SIZE <= sectors.length; offset += SECTOR_SIZE) {
+            ByteBuffer descriptor = ByteBuffer.wrap(sectors, offset, SECTOR_SIZE).slice().order(ByteOrder.LITTLE_ENDIAN);
+            if (!"CD001".equals(new String(sectors, offset + 1, 5, StandardCharsets.US_ASCII))) {
+                break;
+            }
+            int type = descriptor.get(0) & 0xff;
+            if (type == TERMINATOR) {
+                break;
+            } else if (type == PRIMARY && blocks == 0) {
+                label = new String(sectors, offset + 40, 32, StandardCharsets.US_ASCII);
+                blocks = descriptor.getInt(80) & 0xffff_ffffL;
+                blockSize = descriptor.getShort(128) & 0xffff;
+            } else if (type == SUPPLEMENTARY && joliet(descriptor)) {
+                joliet = new String(sectors, offset + 40, 32, StandardCharsets.UTF_16BE);
+            }
+        }
+
+        if (blocks == 0) {
+            return null;
+        }
+        return new Volume(trim(joliet != null ? joliet : label), blockSize, blocks);
+    }
+
+    /** @return whether the supplementary descriptor is Joliet, of the three UCS-2 levels */
+    private static boolean joliet(ByteBuffer descriptor) {
+        return descriptor.get(88) == '%' && descriptor.get(89) == '/' &&
+                (descriptor.get(90) == '@' || descriptor.get(90) == 'C' || descriptor.get(90) == 'E');
+    }
+
+    /** @return the id without the padding, null when it is all padding */
+    private static String trim(String id) {
+        if (id == null) {
+            return null;
+        }
+        String trimmed = id.replace('\0', ' ').trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.IOException;
+
+
+/**
+ * The lz4 block format, the decompressing half of it: sequences of a token, literals
+ * and a match back into what is decompressed already. That is all a ZSO block is,
+ * and not worth a library for.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+final class Lz4 {
+
+    /** the shortest match there is, a match length of 0 stands for this */
+    static final int MIN_MATCH = 4;
+
+    private Lz4() {
+    }
+
+    /**
+     * Decompresses a block until the output is full, anything after that in the input
+     * being padding.
+     *
+     * @throws IOException when the block is broken or decompresses to less
+     */
+    static void decompress(byte[] in, byte[] out) throws IOException {
+        int i = 0;
+        int o = 0;
+        try {
+            while (o < out.length) {
+                int token = in[i++] & 0xff;
+
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = in[i++] & 0xff;
+                        literals += b;
+                    } while (b == 255);
+                }
+                if (literals > out.length - o || literals > in.length - i) {
+                    throw new IOException(String.format("literals of %d bytes past the end at %d", literals, i));
+                }
+                System.arraycopy(in, i, out, o, literals);
+                i += literals;
+                o += literals;
+                if (o == out.length) {
+                    break; // the last sequence has literals only
+                }
+
+                int offset = (in[i++] & 0xff) | (in[i++] & 0xff) << 8;
+                if (offset == 0 || offset > o) {
+                    throw new IOException(String.format("match offset %d at %d", offset, o));
+                }
+                int match = token & 0x0f;
+                if (match == 15) {
+                    int b;
+                    do {
+                        b = in[i++] & 0xff;
+                        match += b;
+                    } while (b == 255);
+                }
+                match += MIN_MATCH;
+                if (match > out.length - o) {
+                    throw new IOException(String.format("match of %d bytes past the end at %d", match, o));
+                }
+                // a match may overlap what it copies, a byte at a time repeats it
+                for (int from = o - offset, to = from + match; from < to; ) {
+                    out[o++] = out[from++];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("lz4 block ends at " + i + " with " + o + " of " + out.length + " bytes", e);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * A disc image read out of memory mapped segments of it. One buffer cannot map more
+ * than 2 GB, so the image is cut into segments of a fixed size, each mapped when it
+ * is first read and shared by every client reading it after that. A range across
+ * the boundary of two segments is read out of both.
+ * <p>
+ * Java has no safe way to unmap a buffer another thread may still be reading, so a
+ * segment nobody read for a while is let go of, and the collector unmaps it.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class MappedSegments implements Closeable {
+
+    /** 1 GB, half of what one buffer can map */
+    static final int SEGMENT_SIZE = 1 << 30;
+
+    /** how long a segment nobody reads stays mapped */
+    static final long IDLE = TimeUnit.MINUTES.toNanos(1);
+
+    private static final class Segment {
+        final MappedByteBuffer buffer;
+        volatile long used = System.nanoTime();
+
+        Segment(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    private final DiskChannel channel;
+
+    private final long size;
+
+    private final int segmentSize;
+
+    private final AtomicReferenceArray<Segment> segments;
+
+    /** when idle segments were last looked for */
+    private volatile long swept = System.nanoTime();
+
+    MappedSegments(DiskChannel channel, long size) {
+        this(channel, size, SEGMENT_SIZE);
+    }
+
+    /** @param segmentSize how much of the image one segment maps */
+    MappedSegments(DiskChannel channel, long size, int segmentSize) {
+        this.channel = channel;
+        this.size = size;
+        this.segmentSize = segmentSize;
+        this.segments = new AtomicReferenceArray<>((int) ((size + segmentSize - 1) / segmentSize));
+    }
+
+    /** @return the segment at the given index, mapping it if nobody has yet */
+    private MappedByteBuffer segment(int index) throws IOException {
+        long now = System.nanoTime();
+        Segment segment = segments.get(index);
+        if (segment == null) {
+            long position = (long) index * segmentSize;
+            MappedByteBuffer buffer = channel.channel().map(FileChannel.MapMode.READ_ONLY, position,
+                                                            Math.min(segmentSize, size - position));
+            // whoever maps it first wins, the loser's mapping goes to the collector
+            segments.compareAndSet(index, null, new Segment(buffer));
+            segment = segments.get(index);
+        }
+        segment.used = now;
+        if (now - swept > IDLE) {
+            sweep(now);
+        }
+        return segment.buffer;
+    }
+
+    /** Lets go of the segments nobody read since the given time less {@link #IDLE}. */
+    void sweep(long now) {
+        swept = now;
+        for (int i = 0; i < segments.length(); i++) {
+            Segment segment = segments.get(i);
+            if (segment != null && now - segment.used > IDLE) {
+                segments.compareAndSet(i, segment, null);
+            }
+        }
+    }
+
+    /**
+     * @return a view of the image from the given position on, as far as the buffer
+     *         asked for or the segment holding the position go, whichever is less
+     */
+    private ByteBuffer slice(long position, long length) throws IOException {
+        int index = (int) (position / segmentSize);
+        int offset = (int) (position % segmentSize);
+        MappedByteBuffer segment = segment(index);
+        return segment.slice(offset, (int) Math.min(length, segment.capacity() - offset));
+    }
+
+    /** Fills the buffer from the given position on. */
+    void read(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            ByteBuffer slice = slice(position, buffer.remaining());
+            position += slice.remaining();
+            buffer.put(slice);
+        }
+    }
+
+    /** Writes count bytes from the given position on to the target, out of the mappings as they are. */
+    void transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        while (count > 0) {
+            ByteBuffer slice = slice(position, count);
+            position += slice.remaining();
+            count -= slice.remaining();
+            while (slice.hasRemaining()) {
+                target.write(slice);
+            }
+        }
+    }
+
+    /** Lets go of every segment. */
+    @Override
+    public void close() {
+        for (int i = 0; i < segments.length(); i++) {
+            segments.set(i, null);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+
+/**
+ * What the server did so far, in prometheus' text format: {@code GET /metrics}.
+ * Requests, bytes and errors per disc, how long reads of images and of drives took,
+ * how long listing the discs took, and what the caches did.
+ * <p>
+ * Counting is a striped add into a counter made once per disc and status, for the
+ * threads serving discs not to wait on each other to count.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+public class Metrics extends HttpServlet {
+
+    /** what a request for no disc served is counted under */
+    static final String NONE = "none";
+
+    /** what is counted of one disc */
+    private static final class Counters {
+        /** by method and status, e.g. "GET 200" */
+        final ConcurrentMap<String, LongAdder> requests = new ConcurrentHashMap<>();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder errors = new LongAdder();
+    }
+
+    /** by disc name */
+    private final ConcurrentMap<String, Counters> disks = new ConcurrentHashMap<>();
+
+    private final LongAdder inFlight = new LongAdder();
+
+    private final Histogram refreshes = new Histogram(Histogram.REFRESHES);
+
+    /** what the gauges are read off, null for none */
+    private final OdsServer server;
+
+    Metrics(OdsServer server) {
+        this.server = server;
+    }
+
+    private Counters of(String disk) {
+        return disks.computeIfAbsent(disk, k -> new Counters());
+    }
+
+    /** Counts a request as being served. */
+    void started() {
+        inFlight.increment();
+    }
+
+    /**
+     * Counts a request served, as an error as well when it failed on the way or was
+     * answered with a server error.
+     */
+    void finished(String disk, String method, int status, boolean failed) {
+        inFlight.decrement();
+        Counters counters = of(disk);
+        counters.requests.computeIfAbsent(method + " " + status, k -> new LongAdder()).increment();
+        if (failed || status >= 500) {
+            counters.errors.increment();
+        }
+    }
+
+    /** Counts bytes of the disc sent. */
+    void sent(String disk, long bytes) {
+        of(disk).bytes.add(bytes);
+    }
+
+    /** Counts a listing of the discs that took the given nanoseconds. */
+    void refreshed(long nanos) {
+        refreshes.observe(nanos);
+    }
+
+    /** @return what this counted, in prometheus' text format */
+    String scrape() {
+        StringBuilder out = new StringBuilder();
+        Map<String, Counters> disks = new TreeMap<>(this.disks);
+
+        type(out, "ods_requests_total", "counter", "requests served, by disc, method and status");
+        disks.forEach((disk, counters) -> new TreeMap<>(counters.requests).forEach((key, count) -> {
+            String[] methodStatus = key.split(" ");
+            out.append("ods_requests_total{disk=\"").append(escape(disk)).append("\",method=\"").append(methodStatus[0])
+                    .append("\",status=\"").append(methodStatus[1]).append("\"} ").append(count.sum()).append('\n');
+        }));
+        type(out, "ods_bytes_served_total", "counter", "bytes of discs sent, by disc");
+        disks.forEach((disk, counters) -> sample(out, "ods_bytes_served_total", "disk=\"" + escape(disk) + "\"", counters.bytes.sum()));
+        type(out, "ods_errors_total", "counter", "requests failed, by disc");
+        disks.forEach((disk, counters) -> sample(out, "ods_errors_total", "disk=\"" + escape(disk) + "\"", counters.errors.sum()));
+
+        type(out, "ods_requests_in_flight", "gauge", "requests being served");
+        sample(out, "ods_requests_in_flight", "", inFlight.sum());
+
+        type(out, "ods_read_seconds", "histogram", "how long reads and transfers of discs for clients took, by what was read");
+        OnlineDisk.imageReads.write(out, "ods_read_seconds", "source=\"image\"");
+        OnlineDisk.driveReads.write(out, "ods_read_seconds", "source=\"drive\"");
+
+        type(out, "ods_catalog_refresh_seconds", "histogram", "how long listing the discs took");
+        refreshes.write(out, "ods_catalog_refresh_seconds", "");
+
+        type(out, "ods_reads_joined_total", "counter", "reads that waited for the same bytes read for another");
+        sample(out, "ods_reads_joined_total", "", SingleFlight.joinedAll.sum());
+        return out.toString();
+    }
+
+    /** Writes what is read off the server as it is now. */
+    private void gauges(StringBuilder out) throws IOException {
+        Catalog catalog = server.catalog();
+        type(out, "ods_catalog_discs", "gauge", "discs served, by kind");
+        sample(out, "ods_catalog_discs", "kind=\"image\"", catalog.images().size());
+        sample(out, "ods_catalog_discs", "kind=\"drive\"", catalog.drives().size());
+
+
+        SectorCache cache = server.cache;
+        if (cache != null) {
+            type(out, "ods_sector_cache_hits_total", "counter", "sectors found in the cache");
+            sample(out, "ods_sector_cache_hits_total", "", cache.hits());
+            type(out, "ods_sector_cache_misses_total", "counter", "sectors read off a disc");
+            sample(out, "ods_sector_cache_misses_total", "", cache.misses());
+            type(out, "ods_sector_cache_evictions_total", "counter", "sectors pushed out for ones read more often");
+            sample(out, "ods_sector_cache_evictions_total", "", cache.evictions());
+            type(out, "ods_sector_cache_rejections_total", "counter", "sectors not let in, being read too seldom");
+            sample(out, "ods_sector_cache_rejections_total", "", cache.rejections());
+            type(out, "ods_sector_cache_bytes", "gauge", "bytes the cache keeps");
+            sample(out, "ods_sector_cache_bytes", "", cache.used());
+            type(out, "ods_sector_cache_capacity_bytes", "gauge", "bytes the cache keeps at most");
+            sample(out, "ods_sector_cache_capacity_bytes", "", cache.capacity());
+        }
+
+        Scrubber scrubber = server.scrubber();
+        if (scrubber != null) {
+            type(out, "ods_scrub_corrupt_chunks_total", "counter", "chunks of images found not to be what they were");
+            sample(out, "ods_scrub_corrupt_chunks_total", "", scrubber.corrupt());
+        }
+    }
+
+    private static void type(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    /** @return the label value with what prometheus needs escaped escaped */
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        StringBuilder out = new StringBuilder(scrape());
+        if (server != null) {
+            gauges(out);
+        }
+        byte[] body = out.toString().getBytes(StandardCharsets.UTF_8);
+        resp.setContentType("text/plain; version=0.0.4; charset=utf-8");
+        resp.setContentLengthLong(body.length);
+        resp.getOutputStream().write(body);
+    }
+}
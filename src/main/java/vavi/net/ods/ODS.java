@@ -4,20 +4,30 @@
 
 package vavi.net.ods;
 
-import java.io.DataOutput;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.time.LocalDateTime;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+import org.eclipse.jetty.ee10.servlet.HttpOutput;
 
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import vavi.net.ods.ByteRanges.Range;
 import vavi.net.ods.OnlineDisk.OnlineDiskState;
 
 
@@ -29,14 +39,21 @@ public class ODS extends HttpServlet {
 
     Tools tools = Tools.getInstance();
 
-    static final Pattern range = Pattern.compile("bytes=(\\d+)-(\\d*)");
-
     /** what apple's remote disc client calls itself when it asks for a disc's size */
     static final String STAT_USER_AGENT = "CCURLBS::statImage";
 
     /** what it calls itself when it reads disc content */
     static final String READ_USER_AGENT = "CCURLBS::readDataFork";
 
+    /**
+     * the request attribute of a request sent on without a thread, counted, and its
+     * disc let go of, when the sending ends
+     */
+    static final String ASYNC = ODS.class.getName() + ".async";
+
+    /** the images served unchecked for want of hashes, told of once each */
+    private final Set<Path> unchecked = ConcurrentHashMap.newKeySet();
+
     ODS(OdsServer server) {
         this.server = server;
     }
@@ -59,6 +76,38 @@ public class ODS extends HttpServlet {
         return extension == null ? _disk : _disk.substring(0, _disk.length() - extension.length() - 1);
     }
 
+    /**
+     * Counts the request, whatever it was answered, when it was answered: one sent on
+     * without a thread is counted by what sends it, when it is done.
+     */
+    @Override
+    protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        Metrics metrics = server.metrics;
+        metrics.started();
+        boolean failed = true;
+        try {
+            super.service(req, resp);
+            failed = false;
+        } finally {
+            if (failed || req.getAttribute(ASYNC) == null) {
+                metrics.finished(counted(req), req.getMethod(), resp.getStatus(), failed);
+            }
+        }
+    }
+
+    /**
+     * @return the disc asked for as it is counted, {@link Metrics#NONE} when none is
+     *         served by the name, for a client making names up not to make up counters
+     */
+    private String counted(HttpServletRequest req) {
+        String basename = resolveDisk(req);
+        try {
+            return basename != null && server.catalog().get(basename) != null ? basename : Metrics.NONE;
+        } catch (IOException e) {
+            return Metrics.NONE;
+        }
+    }
+
     /**
      * A get request is sent for reading a "chunk" of a disk using a supplied byte
      * range.
@@ -79,7 +128,7 @@ public class ODS extends HttpServlet {
 
         OnlineDisk disk = null;
         try {
-            disk = this.server.disks().get(basename);
+            disk = this.server.catalog().get(basename);
         } catch (IOException e) {
             logging.log(Level.SEVERE, "basename: " + basename, e);
             resp.sendError(404, "Disk not found");
@@ -92,39 +141,326 @@ public class ODS extends HttpServlet {
             return;
         }
 
+        // held for the catalog not to close it under the request when it is replaced
+        disk.acquire();
+        try {
+            get(req, resp, basename, disk);
+        } finally {
+            // what sends on without a thread lets go of it when it is done
+            if (req.getAttribute(ASYNC) == null) {
+                disk.release();
+            }
+        }
+    }
+
+    /** Serves the disc held, the client being one that reads discs. */
+    private void get(HttpServletRequest req, HttpServletResponse resp, String basename, OnlineDisk disk) throws IOException {
+        if (disk.state() != OnlineDiskState.READY) {
+            resp.sendError(404, "Device not ready");
+            return;
+        }
+
+        // after the state, which tells a drive of a disc swapped
+        String etag = disk.etag();
+        long modified = disk.lastModified();
+        if (notModified(req, resp, etag, modified)) {
+            return;
+        }
+
         String requested = req.getHeader("range");
-        int start, end;
-        Matcher range = requested == null ? null : ODS.range.matcher(requested);
-        if (range != null && range.find()) {
-            start = Integer.parseInt(range.group(1));
-            // an open ended "bytes=n-" asks for everything that is left
-            end = range.group(2).isEmpty() ? disk.size() - 1 : Integer.parseInt(range.group(2));
-        } else {
+        // a client resuming a read of another disc than the one there now gets all of it
+        boolean whole = requested != null && !Conditions.rangeApplies(req.getHeader("If-Range"), etag, modified);
+        if (whole) {
+            requested = "bytes=0-";
+        }
+        List<Range> ranges = ByteRanges.parse(requested, disk.size());
+        if (ranges == null) {
             logging.fine("range: " + requested);
             resp.sendError(400, "Range decode error: " + requested);
             return;
         }
 
-        if (start >= disk.size() || end < start) {
+        if (ranges.isEmpty()) {
             resp.sendError(416, "Range out of bounds: " + requested);
             return;
         }
-        end = Math.min(end, disk.size() - 1);
 
-        byte[] data;
-        if (disk.state() == OnlineDiskState.READY) {
-            data = disk.read(start, end);
-        } else {
-            resp.sendError(404, "Device not ready");
+        resp.setHeader("Server", "ODS/1.0");
+
+        // the first chunk of each range is checked before anything is sent, the rest
+        // as it is sent: a whole disc is not hashed before its first byte goes out. What
+        // was read of a chunk to check it is what is sent of it, it is not read again
+        ChunkHashes checked = server.verify() ? disk.hashes() : null;
+        if (server.verify() && checked == null && Files.isRegularFile(disk.path()) && unchecked.add(disk.path())) {
+            logging.warning(disk.path() + ": no hashes, served unchecked until it is hashed");
+        }
+        byte[][] firsts = new byte[ranges.size()][];
+        for (int i = 0; checked != null && i < ranges.size(); i++) {
+            Range range = ranges.get(i);
+            try {
+                firsts[i] = checked.check(disk.reader(), range.start(), firstChunkEnd(range.start(), range.end()));
+            } catch (IOException e) {
+                logging.severe(disk.path() + ": " + e.getMessage());
+                resp.sendError(500, "Disk corrupt");
+                return;
+            }
+        }
+
+        if (ranges.size() > 1) {
+            sendRanges(basename, disk, ranges, checked, firsts, resp);
             return;
         }
 
+        long start = ranges.get(0).start();
+        long end = ranges.get(0).end();
+
         resp.setHeader("Content-Type", "application/octet-stream");
-        resp.setHeader("Server", "ODS/1.0");
+        if (!whole) {
+            // a part of the disc, not to be taken for all of it by anybody caching it
+            resp.setStatus(206);
+            resp.setHeader("Content-Range", String.format("bytes %d-%d/%d", start, end, disk.size()));
+        }
+        ChunkHashes hashes = disk.hashes();
+        String digest = hashes != null ? hashes.digest(start, end) : null;
+        if (digest != null) {
+            // a range of one chunk has its hash known already
+            resp.setHeader("Content-Digest", "sha-256=:" + digest + ":");
+        }
+        resp.setContentLengthLong(end - start + 1);
+        if (checked != null && end > firstChunkEnd(start, end)) {
+            sendChecked(disk, checked, firsts[0], start, end, metered(basename, channelOf(resp.getOutputStream())));
+            return;
+        }
+        byte[] data = firsts[0];
+        if (data == null) {
+            data = ahead(req, disk, start, end);
+        }
+        if (data == null) {
+            data = cached(disk, start, end);
+        }
+        if (server.async() && req.isAsyncSupported()) {
+            // no thread waits on the client from here on
+            if (data != null) {
+                AsyncTransfer transfer = new AsyncTransfer(req.startAsync(), data, done(req, resp, basename, disk));
+                req.setAttribute(ASYNC, basename);
+                transfer.start();
+                return;
+            }
+            AsynchronousFileChannel file = disk.asynchronous();
+            if (file != null) {
+                AsyncTransfer transfer = new AsyncTransfer(req.startAsync(), file, start, end, done(req, resp, basename, disk));
+                req.setAttribute(ASYNC, basename);
+                transfer.start();
+                return;
+            }
+        }
+        send(disk, start, end, data, metered(basename, channelOf(resp.getOutputStream())));
+    }
+
+    /**
+     * Sends several ranges as the parts of one {@code multipart/byteranges} response,
+     * reading the disc for them in one pass from start to end.
+     */
+    private void sendRanges(String basename, OnlineDisk disk, List<Range> ranges, ChunkHashes checked, byte[][] firsts, HttpServletResponse resp) throws IOException {
+        String boundary = "ODS" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+        List<byte[]> heads = new ArrayList<>();
+        long length = 0;
+        for (Range range : ranges) {
+            byte[] head = ("\r\n--" + boundary + "\r\n" +
+                           "Content-Type: application/octet-stream\r\n" +
+                           String.format("Content-Range: bytes %d-%d/%d\r\n\r\n", range.start(), range.end(), disk.size()))
+                    .getBytes(StandardCharsets.US_ASCII);
+            heads.add(head);
+            length += head.length + range.length();
+        }
+        byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        length += tail.length;
 
-        resp.setHeader("Content-Range", String.format("bytes %d-%d/%d", start, end, disk.size()));
-        DataOutput out = new DataOutputStream(resp.getOutputStream());
-        out.write(data);
+        resp.setStatus(206);
+        resp.setHeader("Content-Type", "multipart/byteranges; boundary=" + boundary);
+        resp.setContentLengthLong(length);
+        WritableByteChannel out = channelOf(resp.getOutputStream());
+        // the parts' heads are not of the disc, and not counted
+        WritableByteChannel metered = metered(basename, out);
+        for (int i = 0; i < ranges.size(); i++) {
+            Range range = ranges.get(i);
+            write(heads.get(i), out);
+            if (checked != null) {
+                sendChecked(disk, checked, firsts[i], range.start(), range.end(), metered);
+            } else {
+                send(disk, range.start(), range.end(), cached(disk, range.start(), range.end()), metered);
+            }
+        }
+        write(tail, out);
+    }
+
+    /**
+     * Tells the client what the disc is as it is now, and answers that it did not
+     * change when the client has it as it is already.
+     *
+     * @return whether the client was answered
+     */
+    private static boolean notModified(HttpServletRequest req, HttpServletResponse resp, String etag, long modified) {
+        resp.setHeader("ETag", etag);
+        resp.setHeader("Last-Modified", Conditions.date(modified));
+        if (Conditions.notModified(req.getHeader("If-None-Match"), req.getHeader("If-Modified-Since"), etag, modified)) {
+            resp.setStatus(304);
+            return true;
+        }
+        return false;
+    }
+
+    /** @return the last byte of the range in the chunk it starts in */
+    private static long firstChunkEnd(long start, long end) {
+        return Math.min(end, (start / ChunkHashes.CHUNK_SIZE + 1) * ChunkHashes.CHUNK_SIZE - 1);
+    }
+
+    /**
+     * Sends the range a chunk at a time, each checked just before it is sent, and sent
+     * out of what was read to check it when it had to be. A chunk found corrupt cuts
+     * the response short, it being too late to say so otherwise.
+     *
+     * @param first the range's part in its first chunk, read when it was checked
+     *        already, null when it was not read
+     */
+    private static void sendChecked(OnlineDisk disk, ChunkHashes hashes, byte[] first, long start, long end, WritableByteChannel out) throws IOException {
+        long position = start;
+        if (first != null) {
+            write(first, out);
+            position += first.length;
+        }
+        while (position <= end) {
+            long last = firstChunkEnd(position, end);
+            byte[] data;
+            try {
+                data = hashes.check(disk.reader(), position, last);
+            } catch (IOException e) {
+                logging.severe(disk.path() + ": " + e.getMessage());
+                throw new IOException("corrupt at " + position + ": " + disk.path(), e);
+            }
+            send(disk, position, last, data, out);
+            position = last + 1;
+        }
+    }
+
+    /** @return the range out of the sector cache, null when it is not for that */
+    private byte[] cached(OnlineDisk disk, long start, long end) throws IOException {
+        SectorCache cache = server.cache;
+        if (cache != null && cache.caches(disk, end - start + 1)) {
+            // the sectors everybody reads all the time, out of memory
+            return cache.read(disk, start, end);
+        }
+        return null;
+    }
+
+    /** Sends the range, out of the data when it is read already. */
+    private static void send(OnlineDisk disk, long start, long end, byte[] data, WritableByteChannel out) throws IOException {
+        if (data != null) {
+            write(data, out);
+        } else {
+            // a plain file goes out of its mapping to the connection as it is, and the
+            // bytes never come up here, anything else is read and written a chunk at a time
+            disk.transferTo(start, end, out);
+        }
+    }
+
+    private static void write(byte[] data, WritableByteChannel out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * @return the range out of what was read ahead of the client, null when nothing
+     *         was, or the client is not read ahead of
+     */
+    private byte[] ahead(HttpServletRequest req, OnlineDisk disk, long start, long end) {
+        ReadAhead readAhead = server.readAhead;
+        if (readAhead == null || end - start + 1 > ReadAhead.MAX_WINDOW) {
+            return null;
+        }
+        // the os reads ahead of a plain file already, unless it is far away
+        if (disk.zeroCopy() && !server.readAheadImages()) {
+            return null;
+        }
+        return readAhead.read(req.getRemoteAddr(), disk, start, end);
+    }
+
+    /**
+     * @return the response as a channel: jetty's own output takes a buffer as it is,
+     *         direct ones included, any other stream has it copied out first
+     */
+    static WritableByteChannel channelOf(OutputStream out) {
+        if (out instanceof HttpOutput) {
+            HttpOutput output = (HttpOutput) out;
+            return new WritableByteChannel() {
+                boolean open = true;
+
+                @Override
+                public int write(ByteBuffer src) throws IOException {
+                    int n = src.remaining();
+                    output.write(src);
+                    src.position(src.limit());
+                    return n;
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return open;
+                }
+
+                @Override
+                public void close() {
+                    open = false; // the container closes the response, not us
+                }
+            };
+        } else {
+            return Channels.newChannel(out);
+        }
+    }
+
+    /**
+     * @return what counts what a transfer without a thread sent, and the request once
+     *         it is done, and lets go of the disc then
+     */
+    private AsyncTransfer.Listener done(HttpServletRequest req, HttpServletResponse resp, String basename, OnlineDisk disk) {
+        Metrics metrics = server.metrics;
+        return new AsyncTransfer.Listener() {
+            @Override
+            public void sent(int bytes) {
+                metrics.sent(basename, bytes);
+            }
+
+            @Override
+            public void done(boolean failed) {
+                disk.release();
+                metrics.finished(basename, req.getMethod(), resp.getStatus(), failed);
+            }
+        };
+    }
+
+    /** @return the channel, counting what was written to it as bytes of the disc sent */
+    private WritableByteChannel metered(String basename, WritableByteChannel out) {
+        Metrics metrics = server.metrics;
+        return new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                int n = out.write(src);
+                metrics.sent(basename, n);
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return out.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        };
     }
 
     /**
@@ -146,7 +482,7 @@ public class ODS extends HttpServlet {
 
         OnlineDisk disk = null;
         try {
-            disk = this.server.disks().get(basename);
+            disk = this.server.catalog().get(basename);
         } catch (IOException e) {
             logging.log(Level.SEVERE, "basename: " + basename, e);
             resp.sendError(404, "Disk not found");
@@ -159,11 +495,19 @@ public class ODS extends HttpServlet {
             return;
         }
 
-        resp.setHeader("Content-Type", "application/octet-stream");
-        resp.setHeader("Server", "ODS/1.0");
+        disk.acquire();
+        try {
+            resp.setHeader("Server", "ODS/1.0");
+            if (notModified(req, resp, disk.etag(), disk.lastModified())) {
+                return;
+            }
 
-        resp.setHeader("Date", LocalDateTime.now().toString());
-        resp.setHeader("Accept-Ranges", "bytes");
-        resp.setHeader("Content-Length", String.valueOf(disk.size()));
+            resp.setHeader("Content-Type", "application/octet-stream");
+            resp.setHeader("Date", Conditions.date(System.currentTimeMillis()));
+            resp.setHeader("Accept-Ranges", "bytes");
+            resp.setHeader("Content-Length", String.valueOf(disk.size()));
+        } finally {
+            disk.release();
+        }
     }
 }
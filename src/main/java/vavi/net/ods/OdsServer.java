@@ -7,16 +7,21 @@ package vavi.net.ods;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 import java.util.prefs.Preferences;
-import java.util.stream.Collectors;
 
 import org.eclipse.jetty.ee10.servlet.ServletContextHandler;
 import org.eclipse.jetty.ee10.servlet.ServletHolder;
@@ -25,8 +30,9 @@ import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.DefaultHandler;
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
-import vavi.net.ods.OnlineDisk.DiskImage;
 import vavi.net.ods.OnlineDisk.OpticalDrive;
 
 
@@ -60,24 +66,51 @@ public class OdsServer {
         void update() throws IOException;
     }
 
-    List<OnlineDisk> drives;
-    List<OnlineDisk> images;
+    /** makes the plugin of a server, e.g. what announces it */
+    interface PluginFactory {
+        /** @return the plugin, null for none */
+        Plugin create(OdsServer server) throws IOException;
+    }
+
+    /** the discs served, replaced as a whole on each update, null until the first */
+    private volatile Catalog catalog;
+
     Plugin plugin;
 
-    // property
-    public Map<String, OnlineDisk> disks() throws IOException {
-        if (drives == null || images == null) {
+    /** what is known of the images, kept in the images directory, null until the first update */
+    private ImageIndex index;
+
+    /** held while the images or the drives are updated, by a request, the watcher or the reconciler */
+    private final Lock updating = new ReentrantLock();
+
+    /** tells of images added, changed or gone, null when not watching */
+    private ImageWatcher watcher;
+
+    /** checks the images for rot every so often, null when not scrubbing */
+    private Scrubber scrubber;
+
+    /** sectors read again and again, for every disc, null when not configured */
+    final SectorCache cache;
+
+    /** reads ahead of clients reading a disc through, null when not configured */
+    final ReadAhead readAhead;
+
+    /** what was served so far */
+    final Metrics metrics = new Metrics(this);
+
+    /** @return the discs served as they are now, listed on the first call */
+    Catalog catalog() throws IOException {
+        Catalog catalog = this.catalog;
+        if (catalog == null) {
             update();
+            catalog = this.catalog;
         }
-        List<OnlineDisk> all = new ArrayList<>();
-        all.addAll(drives);
-        all.addAll(images);
-        Map<String, OnlineDisk> result = new HashMap<>();
-        AtomicInteger count = new AtomicInteger(0);
-        all.forEach(i -> {
-           result.put(String.format("disk%d", count.getAndIncrement()), i);
-        });
-        return result;
+        return catalog;
+    }
+
+    // property
+    public Map<String, OnlineDisk> disks() throws IOException {
+        return catalog().disks();
     }
 
     // property
@@ -94,34 +127,289 @@ public class OdsServer {
         return root != null ? root : config.get("root", "/mnt/images");
     }
 
+    /** how many bytes of sectors of drives and compressed images read often are kept in memory, 0 for none */
+    public long cacheSize() {
+        return config.getLong("cacheSize", 64 * 1024 * 1024);
+    }
+
+    /** the longest range read through the cache, longer ones go straight to the disc */
+    public long cacheRange() {
+        return config.getLong("cacheRange", 256 * 1024);
+    }
+
+    /** whether clients reading a disc through are read ahead of */
+    public boolean readAhead() {
+        return config.getBoolean("readAhead", true);
+    }
+
+    /**
+     * whether images are read ahead of as well as drives, worth it when the images
+     * directory is on the network, not when the os reads ahead of a local disk anyway
+     */
+    public boolean readAheadImages() {
+        return config.getBoolean("readAheadImages", false);
+    }
+
+    /**
+     * whether ranges are sent without a thread waiting on each, for many slow clients
+     * to be served by few threads
+     */
+    public boolean async() {
+        return config.getBoolean("async", false);
+    }
+
+    /**
+     * whether requests are handled on virtual threads, for thousands of clients with
+     * a disc mounted and doing nothing not to need a thread each. it takes java 21.
+     */
+    public boolean virtualThreads() {
+        return config.getBoolean("virtualThreads", false);
+    }
+
+    /**
+     * where a disc in a drive is copied to as it is read, for the next client to read
+     * it from there rather than the drive, null for nowhere
+     */
+    public Path fillCache() {
+        String directory = config.get("fillCache", null);
+        return directory != null ? Paths.get(directory) : null;
+    }
+
+    /** whether a disc in a drive is ripped to the copy while nobody reads it */
+    public boolean rip() {
+        return config.getBoolean("rip", false);
+    }
+
+    /**
+     * whether the images directory is watched for images added, changed or gone, for
+     * those to be taken in as they come rather than on the next full update
+     */
+    public boolean watch() {
+        return config.getBoolean("watch", true);
+    }
+
+    /** how many seconds apart the whole images directory is listed again when it is watched, 0 for never */
+    public long reconcile() {
+        return config.getLong("reconcile", 600);
+    }
+
+    /**
+     * whether the chunks a range touches are checked against the hashes kept beside
+     * the image before it is served, those not checked before. The hashes are made as
+     * an image is uploaded or indexed with {@link ImageIndex}, or as it is scrubbed,
+     * and an image without them is served unchecked, which is logged
+     */
+    public boolean verify() {
+        return config.getBoolean("verify", false);
+    }
+
+    /** how many megabytes a second the images are read at at most to be scrubbed, 0, the default, for never */
+    public long scrubRate() {
+        return config.getLong("scrubRate", 0);
+    }
+
+    /** how many hours apart the images are scrubbed */
+    public long scrubInterval() {
+        return config.getLong("scrubInterval", 24);
+    }
+
+    /**
+     * whether images are served out of memory mapped segments, rather than read for
+     * each request. A range sent to a socket the os copies to is handed to the os
+     * either way
+     */
+    public boolean mapped() {
+        return config.getBoolean("mapped", false);
+    }
+
+    /** @return what checks the images for rot, null when not scrubbing */
+    Scrubber scrubber() {
+        return scrubber;
+    }
+
+    /** @return the index of the images directory, read on the first call */
+    private ImageIndex index() throws IOException {
+        if (index == null) {
+            index = new ImageIndex(Paths.get(root()), tools).load();
+        }
+        return index;
+    }
+
+    /**
+     * @return the images of the images directory: the ones there already as they were,
+     *         when their files did not change, the others told what the index knows of
+     *         them or read for it. The ones there already stay in the order they were
+     *         in, the new ones come after them, for the discs served not to move about
+     */
+    private List<OnlineDisk> images(List<OnlineDisk> current) throws IOException {
+        Map<Path, OnlineDisk> known = new HashMap<>();
+        if (current != null) {
+            current.forEach(disk -> known.put(disk.path(), disk));
+        }
+        ImageIndex index = index();
+        boolean mapped = mapped();
+        List<Path> paths = tools.listImages(root());
+        Set<Path> there = new HashSet<>(paths);
+        List<Path> ordered = new ArrayList<>();
+        if (current != null) {
+            current.stream().map(OnlineDisk::path).filter(there::contains).forEach(ordered::add);
+        }
+        paths.stream().filter(path -> !known.containsKey(path)).sorted().forEach(ordered::add);
+        List<OnlineDisk> images = new ArrayList<>();
+        for (Path path : ordered) {
+            try {
+                OnlineDisk disk = known.get(path);
+                if (disk == null || index.get(path, Files.readAttributes(path, BasicFileAttributes.class)) == null) {
+                    disk = index.open(path, mapped);
+                }
+                images.add(disk);
+            } catch (IOException e) {
+                logging.warning("cannot read " + path + ": " + e);
+            }
+        }
+        index.retain(paths);
+        try {
+            index.save();
+        } catch (IOException e) {
+            logging.warning("cannot write the index: " + e);
+        }
+        return images;
+    }
+
+    /**
+     * Takes in the files of the images directory given, added, changed or gone, and
+     * nothing else: an image added is the one image read.
+     */
+    void update(Set<Path> files) throws IOException {
+        boolean changed = false;
+        List<OnlineDisk> old = new ArrayList<>();
+        updating.lock();
+        long started = System.nanoTime();
+        try {
+            Catalog catalog = this.catalog;
+            if (catalog == null) {
+                return; // nobody asked for any yet, the first update lists them all
+            }
+            ImageIndex index = index();
+            boolean mapped = mapped();
+            List<OnlineDisk> images = new ArrayList<>(catalog.images());
+            for (Path path : files) {
+                int i = 0;
+                while (i < images.size() && !images.get(i).path().equals(path)) {
+                    i++;
+                }
+                OnlineDisk current = i < images.size() ? images.get(i) : null;
+                if (Files.isRegularFile(path) && tools.is_image(path)) {
+                    if (current != null && index.get(path, Files.readAttributes(path, BasicFileAttributes.class)) != null) {
+                        continue;
+                    }
+                    OnlineDisk disk = index.open(path, mapped);
+                    if (current != null) {
+                        images.set(i, disk);
+                        old.add(current);
+                    } else {
+                        images.add(disk);
+                    }
+                    logging.info("image " + (current != null ? "changed: " : "added: ") + path);
+                } else if (current != null) {
+                    images.remove(i);
+                    old.add(current);
+                    index.forget(path);
+                    logging.info("image gone: " + path);
+                } else {
+                    continue;
+                }
+                changed = true;
+            }
+            if (changed) {
+                this.catalog = Catalog.of(catalog.drives(), images, catalog);
+                try {
+                    index.save();
+                } catch (IOException e) {
+                    logging.warning("cannot write the index: " + e);
+                }
+                metrics.refreshed(System.nanoTime() - started);
+            }
+        } finally {
+            updating.unlock();
+        }
+
+        retire(old);
+        if (changed && plugin != null) {
+            plugin.update();
+        }
+    }
+
+    /** Takes in an image uploaded, indexed with what was read of it as it was uploaded. */
+    void added(Upload upload) throws IOException {
+        updating.lock();
+        try {
+            ImageIndex index = index();
+            index.put(upload.path(), upload.volume(), upload.hash());
+            index.save();
+        } finally {
+            updating.unlock();
+        }
+        update(Set.of(upload.path()));
+    }
+
     public void update() throws IOException {
+        updating.lock();
+        try {
+            long started = System.nanoTime();
+            relist();
+            metrics.refreshed(System.nanoTime() - started);
+        } finally {
+            updating.unlock();
+        }
+    }
+
+    /** Lists the images and the drives again, all of them. */
+    private void relist() throws IOException {
+        Catalog catalog = this.catalog;
+        List<OnlineDisk> old = new ArrayList<>();
+        if (catalog != null) {
+            old.addAll(catalog.images());
+            old.addAll(catalog.drives());
+        }
+
         boolean changed;
         int h;
-        if (images == null || drives == null) {
+        if (catalog == null) {
             changed = true;
             h = 0;
         } else {
             changed = false;
-            h = images.hashCode();
+            h = catalog.images().hashCode();
         }
 
-        images = tools.listImages(root()).stream().map(DiskImage::new).collect(Collectors.toList());
+        List<OnlineDisk> images = images(catalog != null ? catalog.images() : null);
+        old.removeAll(images);
 
         if (images.hashCode() != h) {
             changed = true;
         }
 
+        List<OnlineDisk> drives;
         try {
             if (changed == false) {
-                h = drives.hashCode();
+                h = catalog.drives().hashCode();
             }
-            drives = tools.listOpticalDrives().stream().map(OpticalDrive::new).collect(Collectors.toList());
+            drives = drives(catalog != null ? catalog.drives() : null);
             if (changed == false && drives.hashCode() != h) {
                 changed = true;
             }
         } catch (Exception e) {
-            drives = Collections.emptyList();
+            // the drives are as they were, not gone, when they cannot be listed
+            drives = catalog != null ? catalog.drives() : Collections.emptyList();
         }
+        old.removeAll(drives);
+
+        // in place before the ones replaced are closed, for no request to find them
+        this.catalog = Catalog.of(drives, images, catalog);
+
+        // the ones gone hold a channel open each, the ones kept are still served
+        retire(old);
 
         if (changed) {
             if (plugin != null) {
@@ -130,6 +418,47 @@ public class OdsServer {
         }
     }
 
+    /**
+     * @return the drives there are: the ones there already as they were, asked for
+     *         their state for a disc swapped to be told, the others made, for what
+     *         was copied or ripped of a disc to last as long as the disc is in
+     */
+    private List<OnlineDisk> drives(List<OnlineDisk> current) throws IOException {
+        Map<Path, OnlineDisk> known = new HashMap<>();
+        if (current != null) {
+            current.forEach(disk -> known.put(disk.path(), disk));
+        }
+        Path fillCache = fillCache();
+        boolean rip = rip();
+        List<OnlineDisk> drives = new ArrayList<>();
+        for (Path path : tools.listOpticalDrives()) {
+            OnlineDisk disk = known.get(path);
+            if (disk != null) {
+                disk.state(); // discards what it had of a disc taken out
+            } else {
+                disk = new OpticalDrive(path, fillCache, rip);
+            }
+            drives.add(disk);
+        }
+        return drives;
+    }
+
+    /** Lets go of what the given discs hold open, once the requests reading them are done. */
+    private static void retire(List<OnlineDisk> disks) {
+        disks.forEach(OnlineDisk::retire);
+    }
+
+    /** Lets go of what the given discs hold open. */
+    private static void close(List<OnlineDisk> disks) {
+        for (OnlineDisk disk : disks) {
+            try {
+                disk.close();
+            } catch (IOException e) {
+                logging.fine("close: " + disk.path() + ": " + e);
+            }
+        }
+    }
+
     OdsServer() throws IOException {
         this(null, 0);
     }
@@ -140,6 +469,16 @@ public class OdsServer {
      * @param port the port to serve them on, 0 for the configured one
      */
     OdsServer(String root, int port) throws IOException {
+        this(root, port, Bonjour::new);
+    }
+
+    /**
+     * @param root the directory the disc images are served from, null for the
+     *             configured one
+     * @param port the port to serve them on, 0 for the configured one
+     * @param plugin what makes the plugin, e.g. one announcing nothing
+     */
+    OdsServer(String root, int port, PluginFactory plugin) throws IOException {
         this.root = root;
         this.port = port;
 
@@ -148,10 +487,10 @@ public class OdsServer {
             // but continue gracefully.
         }
 
-        images = null;
-        drives = null;
+        cache = cacheSize() > 0 ? new SectorCache(cacheSize(), cacheRange()) : null;
+        readAhead = readAhead() ? new ReadAhead(config.getInt("readAheadThreads", 4)) : null;
 
-        plugin = new Bonjour(this);
+        this.plugin = plugin.create(this);
     }
 
     /** Starts serving and waits for the server to be shut down. */
@@ -169,7 +508,17 @@ public class OdsServer {
     void start() throws IOException {
         logging.info("Starting webserver");
 
-        server = new Server();
+        QueuedThreadPool threads = new QueuedThreadPool();
+        threads.setName("ods");
+        if (virtualThreads()) {
+            if (VirtualThreads.areSupported()) {
+                threads.setVirtualThreadsExecutor(VirtualThreads.getDefaultVirtualThreadsExecutor());
+                logging.info("Serving on virtual threads");
+            } else {
+                logging.warning("virtual threads need java 21, serving on platform threads");
+            }
+        }
+        server = new Server(threads);
 
         try {
             ServerConnector connector = new ServerConnector(server);
@@ -181,12 +530,14 @@ public class OdsServer {
             // register instances: both servlets need a reference to this server,
             // so they have no no-arg constructor for jetty to reflect on
             ServletHolder ods = new ServletHolder(new ODS(this));
+            ods.setAsyncSupported(true);
             context.addServlet(ods, "/");
             // hdiutil can only attach a plain path, so serve /disk0.iso as well
             for (String ext : new String[] {"*.iso", "*.img", "*.dmg"}) {
                 context.addServlet(ods, ext);
             }
             context.addServlet(new ServletHolder(new Image(this)), "/images");
+            context.addServlet(new ServletHolder(metrics), "/metrics");
 
             // jetty 12 spells a HandlerCollection tried in order as a Sequence
             server.setHandler(new Handler.Sequence(context, new DefaultHandler()));
@@ -195,6 +546,26 @@ public class OdsServer {
         } catch (Exception e) { // let me down
             throw new IOException(e);
         }
+
+        if (watch() && Files.isDirectory(Paths.get(root()))) {
+            watcher = new ImageWatcher(Paths.get(root()), new ImageWatcher.Listener() {
+                @Override
+                public void changed(Set<Path> files) throws IOException {
+                    update(files);
+                }
+
+                @Override
+                public void reconcile() throws IOException {
+                    update();
+                }
+            }, reconcile());
+        }
+
+        if (scrubRate() > 0 && Files.isDirectory(Paths.get(root()))) {
+            scrubber = new Scrubber(Paths.get(root()), () -> catalog().images(),
+                                    scrubRate() * 1024 * 1024, TimeUnit.HOURS.toMillis(scrubInterval()));
+            scrubber.start(Scrubber.DELAY);
+        }
     }
 
     void stop() throws IOException {
@@ -203,6 +574,20 @@ public class OdsServer {
         } catch (Exception e) { // let me down
             throw new IOException(e);
         } finally {
+            if (watcher != null) {
+                watcher.close();
+            }
+            if (scrubber != null) {
+                scrubber.close();
+            }
+            if (readAhead != null) {
+                readAhead.close();
+            }
+            Catalog catalog = this.catalog;
+            if (catalog != null) {
+                close(catalog.images());
+                close(catalog.drives());
+            }
             // or the discs stay announced to everyone browsing, pointing at nothing
             if (plugin instanceof Closeable) {
                 ((Closeable) plugin).close();
@@ -4,15 +4,29 @@
 
 package vavi.net.ods;
 
+import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public abstract class OnlineDisk {
+public abstract class OnlineDisk implements Closeable {
 
     static final Logger logging = Logger.getLogger(OnlineDisk.class.getName());
 
@@ -26,12 +40,44 @@ public abstract class OnlineDisk {
     }
 
     protected Path path;
-    protected int size = 0;
+    protected long size = 0;
     protected String label = null;
     protected OnlineDiskState state = OnlineDiskState.EMPTY;
 
+    /** where reads go, one channel per disc for every client reading it */
+    protected final DiskChannel channel;
+
+    /** stands for the disc in this, a drive takes a new one with each disc put in it */
+    protected volatile Object media = new Object();
+
+    /** when {@link #media} was taken, for a drive when the disc was put in */
+    protected volatile long inserted = System.currentTimeMillis();
+
+    /** how many requests hold this, and whether it is to be closed once none does */
+    private int holders;
+    private boolean retired;
+
+    /** held while the holders are counted */
+    private final Lock holding = new ReentrantLock();
+
+    /** the reads of this going on, for another read of the same bytes to wait for rather than read them again */
+    private final SingleFlight flights = new SingleFlight(this::timed);
+
+    /** how long reads of images took, every image's */
+    static final Histogram imageReads = new Histogram(Histogram.READS);
+
+    /** how long reads of drives took, every drive's */
+    static final Histogram driveReads = new Histogram(Histogram.READS);
+
+    /** the hashes of the chunks of an image, null when there are none */
+    private volatile ChunkHashes hashes;
+
+    /** whether the file beside the image was looked for the hashes yet */
+    private volatile boolean hashesRead;
+
     OnlineDisk(Path path) {
         this.path = path;
+        this.channel = new DiskChannel(path);
     }
 
     // property
@@ -48,7 +94,7 @@ public abstract class OnlineDisk {
     }
 
     // property
-    public int size() throws IOException {
+    public long size() throws IOException {
         return size;
     }
 
@@ -57,11 +103,226 @@ public abstract class OnlineDisk {
         return label;
     }
 
+    /**
+     * @return what tells this disc apart from any other, and from whatever disc was
+     *         in the same drive before: what is remembered of it is remembered under this
+     */
+    public Object media() {
+        return media;
+    }
+
+    /**
+     * @return the entity tag of the disc as it is now: of an image, the identity, size
+     *         and time of its file, of a drive, the disc in it
+     */
+    public String etag() throws IOException {
+        if (Files.isRegularFile(path)) {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return String.format("\"%x-%x-%x\"", attributes.size(), attributes.lastModifiedTime().toMillis(),
+                                 Objects.hashCode(attributes.fileKey()));
+        }
+        return String.format("\"%x-%x-%x\"", size(), inserted, System.identityHashCode(media));
+    }
+
+    /** @return when the disc changed last, in milliseconds: the time of an image file, when the disc was put in a drive */
+    public long lastModified() throws IOException {
+        return Files.isRegularFile(path) ? Files.getLastModifiedTime(path).toMillis() : inserted;
+    }
+
     abstract void erase();
 
     abstract void eject();
 
-    public abstract byte[] read(int start, int end) throws IOException;
+    /**
+     * @param start the first byte to read
+     * @param end the last byte to read, 0 for the end of the disc
+     * @return the bytes between the two addresses, both included
+     */
+    public byte[] read(long start, long end) throws IOException {
+        if (end == 0) {
+            end = size() - 1;
+        }
+
+        checkRange(start, end);
+
+        if (end - start + 1 > MAX_READ) {
+            throw new IllegalArgumentException(String.format("%d bytes do not fit in an array, transfer them", end - start + 1));
+        }
+
+        return flights.read(start, (int) (end - start + 1));
+    }
+
+    /**
+     * @return what reads this in the background, for its volume descriptors or its
+     *         hashes, coming back short at the end of the disc rather than failing.
+     *         Those reads are not timed, no client waits on them
+     */
+    ElevatorScheduler.Reader reader() {
+        return (position, length) -> {
+            long size = size();
+            if (position >= size) {
+                return new byte[0];
+            }
+            return readAt(position, (int) Math.min(length, size - position));
+        };
+    }
+
+    /** Takes the label and the size as known already, e.g. out of the index, for them not to be read again. */
+    void known(String label, long size) {
+        this.label = label;
+        this.size = size;
+    }
+
+    /**
+     * @return the hashes of the chunks of this, read from beside the image on the
+     *         first call, null for a drive, or an image not hashed as it is yet
+     */
+    ChunkHashes hashes() {
+        if (!hashesRead) {
+            try {
+                hashes = Files.isRegularFile(path) ? ChunkHashes.load(path) : null;
+            } catch (IOException e) {
+                logging.fine("hashes: " + path + ": " + e);
+            }
+            hashesRead = true;
+        }
+        return hashes;
+    }
+
+    /** Takes the hashes as those of this, e.g. after they were made. */
+    void hashes(ChunkHashes hashes) {
+        this.hashes = hashes;
+        this.hashesRead = true;
+    }
+
+    /** the most one {@link #read} returns, what a byte array holds */
+    static final int MAX_READ = Integer.MAX_VALUE - 8;
+
+    /** how much {@link #transferTo} reads at a time when it has to read */
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * @param end the last byte of a range
+     * @throws IllegalArgumentException when the range is not on the disc
+     */
+    protected void checkRange(long start, long end) throws IOException {
+        if (end > size() - 1) {
+            throw new IllegalArgumentException(String.format("end address exceeds size by %d bytes ", end - (size() - 1)));
+        }
+
+        if (start > end) {
+            throw new IllegalArgumentException(String.format("start address exceeds end address %d > %d", start, end));
+        }
+    }
+
+    /** @return what reads of this are timed into */
+    Histogram reads() {
+        return imageReads;
+    }
+
+    /** {@link #readAt}, timed */
+    private byte[] timed(long position, int length) throws IOException {
+        long started = System.nanoTime();
+        try {
+            return readAt(position, length);
+        } finally {
+            reads().observe(System.nanoTime() - started);
+        }
+    }
+
+    /** @return length bytes from the given position on, the range already checked */
+    protected byte[] readAt(long position, int length) throws IOException {
+        return channel.read(position, length);
+    }
+
+    /**
+     * @return whether {@link #transferTo} hands the bytes over without reading them
+     *         into the heap first, i.e. the disc is a plain file, mapped or read into
+     *         a direct buffer for a target the os cannot copy to
+     */
+    public boolean zeroCopy() {
+        return false;
+    }
+
+    /**
+     * Writes the bytes between the two addresses, both included, to the target. This
+     * reads them a chunk at a time and writes what it read, a disc that is a plain
+     * file does better.
+     */
+    public void transferTo(long start, long end, WritableByteChannel target) throws IOException {
+        checkRange(start, end);
+        for (long position = start; position <= end; position += CHUNK_SIZE) {
+            ByteBuffer buffer = ByteBuffer.wrap(flights.read(position, (int) Math.min(CHUNK_SIZE, end - position + 1)));
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * @return the disc to read without a thread waiting on the read, null when it
+     *         cannot be read that way
+     */
+    public AsynchronousFileChannel asynchronous() throws IOException {
+        return null;
+    }
+
+    /** Lets go of the channel reads go through, a read after this opens it again. */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /** @return this, held for a request until it is {@link #release released} */
+    OnlineDisk acquire() {
+        holding.lock();
+        try {
+            holders++;
+        } finally {
+            holding.unlock();
+        }
+        return this;
+    }
+
+    /** Lets go of this for a request, closing it when it was retired and this was the last one. */
+    void release() {
+        boolean idle;
+        holding.lock();
+        try {
+            idle = --holders == 0 && retired;
+        } finally {
+            holding.unlock();
+        }
+        if (idle) {
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Closes this when nobody holds it, once the last request holding it lets go of
+     * it otherwise: it was replaced or is gone, and is not to be read anew.
+     */
+    void retire() {
+        boolean idle;
+        holding.lock();
+        try {
+            retired = true;
+            idle = holders == 0;
+        } finally {
+            holding.unlock();
+        }
+        if (idle) {
+            closeQuietly();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            logging.fine("close: " + path + ": " + e);
+        }
+    }
 
     @Override
     public int hashCode() {
@@ -85,22 +346,92 @@ public abstract class OnlineDisk {
      * Concrete class for disc image file.
      */
     public static class DiskImage extends OnlineDisk {
+
+        /** whether reads come out of memory mapped segments of the image */
+        private final boolean mapped;
+
+        /** null until the first read or transfer of a mapped image */
+        private volatile MappedSegments segments;
+
+        /**
+         * the buffers an image not mapped is read into for a target the os cannot copy
+         * to, one per transfer going on, kept for the next ones: out of the heap, for
+         * the jdk not to copy them once more to write them
+         */
+        private static final BlockingQueue<ByteBuffer> buffers = new ArrayBlockingQueue<>(16);
+
+        /** held while the segments are set up, which asks the file for its size */
+        private final Lock lock = new ReentrantLock();
+
         public DiskImage(Path path) {
+            this(path, false);
+        }
+
+        /**
+         * @param mapped serve reads out of memory mapped segments of the image, which
+         *               every client shares, rather than with a read each
+         */
+        public DiskImage(Path path, boolean mapped) {
             super(path);
+            this.mapped = mapped;
             if (exists()) {
                 state = OnlineDiskState.READY;
             }
         }
 
+        /** @return whether the image is mapped, which it is only when it is to be, once it is read */
+        boolean mapping() {
+            return segments != null;
+        }
+
+        /** @return the mapped segments, set up on the first call */
+        private MappedSegments segments() throws IOException {
+            MappedSegments segments = this.segments;
+            if (segments == null) {
+                lock.lock();
+                try {
+                    segments = this.segments;
+                    if (segments == null) {
+                        segments = new MappedSegments(channel, size());
+                        this.segments = segments;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return segments;
+        }
+
+        @Override
+        protected byte[] readAt(long position, int length) throws IOException {
+            if (mapped) {
+                byte[] data = new byte[length];
+                segments().read(ByteBuffer.wrap(data), position);
+                return data;
+            } else {
+                return super.readAt(position, length);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            MappedSegments segments = this.segments;
+            this.segments = null;
+            if (segments != null) {
+                segments.close();
+            }
+            super.close();
+        }
+
         @Override
         boolean exists() {
             return Files.exists(path());
         }
 
         @Override
-        public int size() throws IOException {
+        public long size() throws IOException {
             if (size == 0 && exists()) {
-                size = (int) Files.size(path());
+                size = Files.size(path());
             }
             return size;
         }
@@ -120,24 +451,172 @@ public abstract class OnlineDisk {
         }
 
         @Override
-        public byte[] read(int start, int end) throws IOException {
-            if (end == 0) {
-                end = size() - 1;
+        public boolean zeroCopy() {
+            return true;
+        }
+
+        @Override
+        public AsynchronousFileChannel asynchronous() throws IOException {
+            return channel.asynchronous();
+        }
+
+        /**
+         * Hands the file region to a file or a socket, for the os to copy. Anything
+         * else, e.g. a servlet's output, gets the mapped region as it is when the image
+         * is mapped, and the region read a chunk at a time into a direct buffer when it
+         * is not: the jdk hands a region to a channel of its own only. It is timed as a
+         * read is.
+         */
+        @Override
+        public void transferTo(long start, long end, WritableByteChannel target) throws IOException {
+            checkRange(start, end);
+            long started = System.nanoTime();
+            try {
+                long position = start;
+                long remaining = end - start + 1L;
+                if (target instanceof FileChannel || target instanceof SelectableChannel) {
+                    FileChannel file = channel.channel();
+                    try {
+                        while (remaining > 0) {
+                            long n = file.transferTo(position, remaining, target);
+                            if (n <= 0) {
+                                throw new EOFException(String.format("%s ends before %d", path, position));
+                            }
+                            position += n;
+                            remaining -= n;
+                        }
+                    } catch (ClosedChannelException e) {
+                        // closed for everybody, by an interrupt, and some of it sent already
+                        channel.closed(file);
+                        throw e;
+                    }
+                } else if (mapped) {
+                    segments().transferTo(position, remaining, target);
+                } else {
+                    copy(position, remaining, target);
+                }
+            } finally {
+                reads().observe(System.nanoTime() - started);
+            }
+        }
+
+        /** Reads the region into a pooled direct buffer a chunk at a time, and writes what it read. */
+        private void copy(long position, long remaining, WritableByteChannel target) throws IOException {
+            ByteBuffer buffer = buffers.poll();
+            if (buffer == null) {
+                buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            }
+            try {
+                FileChannel file = channel.channel();
+                while (remaining > 0) {
+                    buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+                    while (buffer.hasRemaining()) {
+                        int r;
+                        try {
+                            r = file.read(buffer, position + buffer.position());
+                        } catch (ClosedChannelException e) {
+                            channel.closed(file);
+                            throw e;
+                        }
+                        if (r < 0) {
+                            throw new EOFException(String.format("%s ends before %d", path, position + buffer.position()));
+                        }
+                    }
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
+                    position += buffer.limit();
+                    remaining -= buffer.limit();
+                }
+            } finally {
+                buffers.offer(buffer);
+            }
+        }
+
+        @Override
+        void eject() {
+        }
+    }
+
+    /**
+     * Concrete class for disc image file compressed a block at a time, served as the
+     * iso it is.
+     */
+    public static class CompressedImage extends OnlineDisk {
+
+        private final CompressedIso.Format format;
+
+        /** null until the first read */
+        private volatile CompressedIso iso;
+
+        /** held while the index is read */
+        private final Lock lock = new ReentrantLock();
+
+        public CompressedImage(Path path, CompressedIso.Format format) {
+            super(path);
+            this.format = format;
+            if (exists()) {
+                state = OnlineDiskState.READY;
             }
+        }
+
+        /** @return the header and the index, read on the first call */
+        private CompressedIso iso() throws IOException {
+            CompressedIso iso = this.iso;
+            if (iso == null) {
+                lock.lock();
+                try {
+                    iso = this.iso;
+                    if (iso == null) {
+                        iso = new CompressedIso(channel, format);
+                        this.iso = iso;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return iso;
+        }
+
+        @Override
+        protected byte[] readAt(long position, int length) throws IOException {
+            return iso().read(position, length);
+        }
+
+        @Override
+        boolean exists() {
+            return Files.exists(path());
+        }
 
-            if (end > size() - 1) {
-                throw new IllegalArgumentException(String.format("end address exceeds size by %d bytes ", end - (size() - 1)));
+        /** @return how big the iso is, not the file */
+        @Override
+        public long size() throws IOException {
+            if (size == 0 && exists()) {
+                size = iso().size();
             }
+            return size;
+        }
 
-            if (start > end) {
-                throw new IllegalArgumentException(String.format("start address exceeds end address %d > %d", start, end));
+        /** @return the label read out of the iso, the compressed file means nothing to cdrtools */
+        @Override
+        public String label() throws IOException {
+            if (label == null) {
+                Volume volume = Volume.probe(reader());
+                label = volume != null && volume.label() != null ? volume.label() : tools.getLabel(path);
             }
 
-            int len = end - start + 1;
-            byte[] data = new byte[len];
-            byte[] all = Files.readAllBytes(path());
-            System.arraycopy(all, start, data, 0, len);
-            return data;
+            return label;
+        }
+
+        @Override
+        public void close() throws IOException {
+            iso = null;
+            super.close();
+        }
+
+        @Override
+        void erase() {
         }
 
         @Override
@@ -149,11 +628,121 @@ public abstract class OnlineDisk {
      * Concrete class for real optical disc.
      */
     public static class OpticalDrive extends OnlineDisk {
-        protected int _block_size = 0;
-        protected int _vol_size = 0;
+        protected long _block_size = 0;
+        protected long _vol_size = 0;
+
+        /** the one queue every read of this drive goes through, null until the first */
+        private volatile ElevatorScheduler scheduler;
+
+        /** where a local copy of the disc in the drive is made, null for none */
+        private final Path cacheDirectory;
+
+        /** whether the rest of the disc is ripped while nobody reads it */
+        private final boolean rip;
+
+        /** the local copy of the disc in the drive, null until the first read of it */
+        private volatile FillCache fillCache;
+
+        private final Lock lock = new ReentrantLock();
 
         public OpticalDrive(Path path) {
+            this(path, null, false);
+        }
+
+        /**
+         * @param cacheDirectory where to copy the disc in the drive to as it is read,
+         *                       null for not to
+         * @param rip whether to rip the rest of the disc while nobody reads it
+         */
+        public OpticalDrive(Path path, Path cacheDirectory, boolean rip) {
             super(path);
+            this.cacheDirectory = cacheDirectory;
+            this.rip = rip;
+        }
+
+        @Override
+        Histogram reads() {
+            return driveReads;
+        }
+
+        /** @return the local copy of the disc in the drive, made on the first call, null when not configured */
+        private FillCache fillCache() throws IOException {
+            if (cacheDirectory == null) {
+                return null;
+            }
+            FillCache fillCache = this.fillCache;
+            if (fillCache == null) {
+                lock.lock();
+                try {
+                    fillCache = this.fillCache;
+                    if (fillCache == null) {
+                        ElevatorScheduler scheduler = scheduler();
+                        fillCache = new FillCache(cacheDirectory, path.getFileName().toString(), size(), scheduler::read);
+                        if (rip) {
+                            fillCache.rip();
+                        }
+                        this.fillCache = fillCache;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return fillCache;
+        }
+
+        /** Throws the local copy away, the disc it is a copy of being gone. */
+        private void discard() {
+            FillCache fillCache = this.fillCache;
+            this.fillCache = null;
+            if (fillCache != null) {
+                try {
+                    fillCache.close();
+                } catch (IOException e) {
+                    logging.log(Level.FINE, e.getMessage(), e);
+                }
+            }
+        }
+
+        /** @return the queue of reads of this drive, started on the first call */
+        private ElevatorScheduler scheduler() {
+            ElevatorScheduler scheduler = this.scheduler;
+            if (scheduler == null) {
+                lock.lock();
+                try {
+                    scheduler = this.scheduler;
+                    if (scheduler == null) {
+                        scheduler = new ElevatorScheduler(path.getFileName().toString(), super::readAt);
+                        this.scheduler = scheduler;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return scheduler;
+        }
+
+        /**
+         * Reads out of the local copy of the disc where there is one, or queues the
+         * read for the drive to read it when the head gets there.
+         */
+        @Override
+        protected byte[] readAt(long position, int length) throws IOException {
+            FillCache fillCache = fillCache();
+            if (fillCache != null) {
+                return fillCache.read(position, length);
+            }
+            return scheduler().read(position, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            discard();
+            ElevatorScheduler scheduler = this.scheduler;
+            this.scheduler = null;
+            if (scheduler != null) {
+                scheduler.close();
+            }
+            super.close();
         }
 
         // property
@@ -172,6 +761,16 @@ public abstract class OnlineDisk {
 
                 size = 0;
                 label = null;
+                media = new Object();
+                inserted = System.currentTimeMillis();
+                discard();
+                // the channel was opened on the disc that was in the drive before
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logging.log(Level.FINE, e.getMessage(), e);
+                }
+                state = _state;
             }
             return _state;
         }
@@ -185,14 +784,14 @@ public abstract class OnlineDisk {
             return label;
         }
 
-        int[] block_size() {
-            return new int[] { _block_size, _vol_size };
+        long[] block_size() {
+            return new long[] { _block_size, _vol_size };
         }
 
         @Override
-        public int size() throws IOException {
+        public long size() throws IOException {
             if (size == 0) {
-                int[] sizes = tools.blockSize(path);
+                long[] sizes = tools.blockSize(path);
                 _block_size = sizes[0];
                 _vol_size = sizes[1];
             }
@@ -211,27 +810,6 @@ public abstract class OnlineDisk {
         void eject() {
         }
 
-        @Override
-        public byte[] read(int start, int end) throws IOException {
-            if (end == 0) {
-                end = size() - 1;
-            }
-
-            if (end > size() - 1) {
-                throw new IllegalArgumentException(String.format("end address exceeds size by %d bytes ", end - (size() - 1)));
-            }
-
-            if (start > end) {
-                throw new IllegalArgumentException(String.format("start address exceeds end address %d > %d", start, end));
-            }
-
-            int len = end - start + 1;
-            byte[] data = new byte[len];
-            byte[] all = Files.readAllBytes(path());
-            System.arraycopy(all, start, data, 0, len);
-            return data;
-        }
-
         @Override
         boolean exists() {
             return false;
@@ -246,6 +824,11 @@ public abstract class OnlineDisk {
             super(path);
         }
 
+        @Override
+        Histogram reads() {
+            return driveReads;
+        }
+
         @Override
         public String label() {
             if (label == null) {
@@ -268,25 +851,5 @@ public abstract class OnlineDisk {
         void eject() {
         }
 
-        @Override
-        public byte[] read(int start, int end) throws IOException {
-            if (end == 0) {
-                end = size() - 1;
-            }
-
-            if (end > size() - 1) {
-                throw new IllegalArgumentException(String.format("end address exceeds size by %d bytes ", end - (size() - 1)));
-            }
-
-            if (start > end) {
-                throw new IllegalArgumentException(String.format("start address exceeds end address %d > %d", start, end));
-            }
-
-            int len = end - start + 1;
-            byte[] data = new byte[len];
-            byte[] all = Files.readAllBytes(path());
-            System.arraycopy(all, start, data, 0, len);
-            return data;
-        }
     }
 }
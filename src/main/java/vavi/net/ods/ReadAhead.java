@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Reads ahead of a client reading a disc from start to end. Apple's client copies a
+ * disc as one small range after the other, each waiting for the one before; once a
+ * client is seen doing that, the next window of the disc is read while it is busy
+ * with this one, the window growing for as long as it goes on and dropped the
+ * moment the client reads somewhere else.
+ * <p>
+ * A client reading a disc is told apart by its address and the disc.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class ReadAhead implements Closeable {
+
+    static final Logger logging = Logger.getLogger(ReadAhead.class.getName());
+
+    /** what is read ahead first */
+    static final int MIN_WINDOW = 128 * 1024;
+
+    /** what is read ahead at most */
+    static final int MAX_WINDOW = 4 * 1024 * 1024;
+
+    /** how long a client is remembered after its last read */
+    static final long IDLE = TimeUnit.SECONDS.toNanos(30);
+
+    private record Key(String client, Object media) {}
+
+    /** one client reading one disc */
+    private static final class Session {
+        /** where the client reads next when it is reading on */
+        long next = -1;
+        /** how much to read ahead next, 0 for not at all */
+        int window;
+        /** where what is read ahead starts */
+        long from;
+        /** where what is read ahead ends, exclusive */
+        long until;
+        /** what is read ahead, null for nothing */
+        CompletableFuture<byte[]> ahead;
+        volatile long used = System.nanoTime();
+    }
+
+    private final Map<Key, Session> sessions = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor;
+
+    /** when idle sessions were last looked for */
+    private volatile long swept = System.nanoTime();
+
+    /** @param threads how many discs are read ahead at once at most */
+    ReadAhead(int threads) {
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "ods-readahead");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Tells this a client reads the range, and reads ahead of it when it reads on
+     * from where it stopped.
+     *
+     * @return the range out of what was read ahead, or null when it was not, for
+     *         the caller to read it itself
+     */
+    byte[] read(String client, OnlineDisk disk, long start, long end) {
+        long now = System.nanoTime();
+        if (now - swept > IDLE) {
+            sweep(now);
+        }
+
+        Session session = sessions.computeIfAbsent(new Key(client, disk.media()), k -> new Session());
+        session.used = now;
+
+        CompletableFuture<byte[]> ahead = null;
+        long from = 0;
+        synchronized (session) {
+            if (session.ahead != null && start >= session.from && end < session.until) {
+                ahead = session.ahead;
+                from = session.from;
+            }
+
+            if (start == session.next) {
+                session.window = session.window == 0 ? MIN_WINDOW : Math.min(session.window * 2, MAX_WINDOW);
+            } else {
+                // somewhere else, whatever was read ahead is no use
+                session.window = 0;
+                session.ahead = null;
+                ahead = null;
+            }
+            session.next = end + 1;
+
+            // read on once the client reaches the end of what is read ahead already
+            if (session.window > 0 && (session.ahead == null || end + 1 >= session.until)) {
+                session.from = end + 1;
+                session.until = end + 1 + session.window;
+                session.ahead = prefetch(disk, end + 1, session.window);
+            }
+        }
+
+        if (ahead == null) {
+            return null;
+        }
+        try {
+            byte[] data = ahead.get();
+            if (end - from >= data.length) {
+                return null; // the disc ended before
+            }
+            byte[] range = new byte[(int) (end - start + 1)];
+            System.arraycopy(data, (int) (start - from), range, 0, range.length);
+            return range;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            logging.log(Level.FINE, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the window from the given position on being read, less at the end of the
+     *         disc, the disc held until it is read
+     */
+    private CompletableFuture<byte[]> prefetch(OnlineDisk disk, long from, int window) {
+        disk.acquire();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    long size = disk.size();
+                    if (from >= size) {
+                        return new byte[0];
+                    }
+                    return disk.read(from, Math.min(from + window, size) - 1);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    disk.release();
+                }
+            }, executor);
+        } catch (RuntimeException e) {
+            disk.release(); // not to be read, this being closed
+            throw e;
+        }
+    }
+
+    /** Forgets the clients that read nothing since the given time less {@link #IDLE}. */
+    void sweep(long now) {
+        swept = now;
+        sessions.values().removeIf(session -> now - session.used > IDLE);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        sessions.clear();
+    }
+}
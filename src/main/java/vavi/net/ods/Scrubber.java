@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+
+/**
+ * Goes through the images every so often, at no more than so many bytes a second and
+ * on a thread of the lowest priority, for those that rotted on the disk to be found
+ * before a client is served them. An image not hashed yet is hashed, and the hashes
+ * kept beside it, any other has every chunk hashed again and checked against them.
+ * <p>
+ * Hashes left beside an image gone are removed.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class Scrubber implements Closeable {
+
+    static final Logger logging = Logger.getLogger(Scrubber.class.getName());
+
+    /** how long after the server started the first pass starts */
+    static final long DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    private final Path directory;
+
+    /** what the images are when a pass starts */
+    private final Callable<List<OnlineDisk>> images;
+
+    /** how many bytes a second are read at most */
+    private final long rate;
+
+    /** how many milliseconds apart the passes start */
+    private final long interval;
+
+    /** how many chunks were found not to be what they were */
+    private final AtomicLong corrupt = new AtomicLong();
+
+    private final Lock lock = new ReentrantLock();
+
+    /** signalled on close, for the thread not to be interrupted in the middle of a read */
+    private final Condition closing = lock.newCondition();
+
+    private boolean closed;
+
+    private Thread thread;
+
+    /** when the pass started, and how much it read since, for the rate */
+    private long started, read;
+
+    /**
+     * @param rate how many bytes a second are read at most
+     * @param interval how many milliseconds apart the passes start
+     */
+    Scrubber(Path directory, Callable<List<OnlineDisk>> images, long rate, long interval) {
+        this.directory = directory;
+        this.images = images;
+        this.rate = rate;
+        this.interval = interval;
+    }
+
+    /** Starts passing through the images, the first pass after the given milliseconds. */
+    void start(long delay) {
+        Thread thread = new Thread(() -> {
+            try {
+                if (pause(delay)) {
+                    do {
+                        pass();
+                    } while (pause(interval));
+                }
+            } catch (InterruptedIOException e) {
+                // closed
+            }
+        }, "ods-scrub");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        this.thread = thread;
+        thread.start();
+    }
+
+    /**
+     * Goes through the images once.
+     *
+     * @throws InterruptedIOException when this was closed on the way
+     */
+    void pass() throws InterruptedIOException {
+        started = System.nanoTime();
+        read = 0;
+        List<OnlineDisk> disks;
+        try {
+            disks = images.call();
+        } catch (Exception e) {
+            logging.log(Level.WARNING, e.getMessage(), e);
+            return;
+        }
+        for (OnlineDisk disk : disks) {
+            disk.acquire();
+            try {
+                scrub(disk);
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                logging.warning("cannot scrub " + disk.path() + ": " + e);
+            } finally {
+                disk.release();
+            }
+        }
+        removeOrphans();
+    }
+
+    /** Hashes the image when it is not yet, checks every chunk of it otherwise. */
+    private void scrub(OnlineDisk disk) throws IOException {
+        Path path = disk.path();
+        if (!Files.isRegularFile(path)) {
+            return;
+        }
+        ElevatorScheduler.Reader reader = paced(disk.reader());
+        ChunkHashes hashes = disk.hashes();
+        if (hashes == null) {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            hashes = ChunkHashes.build(reader, disk.size(), attributes);
+            hashes.save(path);
+            disk.hashes(hashes);
+            logging.info("hashed " + path);
+            return;
+        }
+        int bad = 0;
+        for (int chunk = 0; chunk < hashes.chunks(); chunk++) {
+            if (!hashes.intact(reader, chunk)) {
+                logging.severe(String.format("%s: chunk %d at %d is not what it was", path, chunk, (long) chunk * ChunkHashes.CHUNK_SIZE));
+                bad++;
+            }
+        }
+        corrupt.addAndGet(bad);
+        logging.fine("scrubbed " + path + ": " + (bad == 0 ? "intact" : bad + " chunks corrupt"));
+    }
+
+    /** @return the reader, waiting after each read for as long as it takes to keep to the rate */
+    private ElevatorScheduler.Reader paced(ElevatorScheduler.Reader reader) {
+        return (position, length) -> {
+            byte[] data = reader.read(position, length);
+            read += data.length;
+            long due = TimeUnit.SECONDS.toNanos(1) * read / rate;
+            long ahead = due - (System.nanoTime() - started);
+            if (ahead > 0 && !pause(TimeUnit.NANOSECONDS.toMillis(ahead))) {
+                throw new InterruptedIOException("closed");
+            }
+            return data;
+        };
+    }
+
+    /** Removes the hashes of images gone. */
+    private void removeOrphans() {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(ChunkHashes.SUFFIX) &&
+                    !Files.exists(file.resolveSibling(name.substring(0, name.length() - ChunkHashes.SUFFIX.length())))) {
+                    Files.deleteIfExists(file);
+                    logging.fine("removed " + file);
+                }
+            }
+        } catch (IOException e) {
+            logging.fine("cannot list " + directory + ": " + e);
+        }
+    }
+
+    /** @return false when this was closed rather than the time is up */
+    private boolean pause(long millis) {
+        lock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+            while (!closed && nanos > 0) {
+                nanos = closing.awaitNanos(nanos);
+            }
+            return !closed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return how many chunks were found not to be what they were, over every pass */
+    long corrupt() {
+        return corrupt.get();
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            closing.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Sectors every client reads again and again - volume descriptors, path tables,
+ * directories, what finder reads for icons - kept in memory for all discs read slowly,
+ * drives and compressed images, up to a number of bytes.
+ * <p>
+ * A sector is let in only when it is read more often than the one it would push
+ * out, the way TinyLFU does it: how often is counted in a small sketch that forgets
+ * slowly, so one client copying a whole disc reads its sectors once each and pushes
+ * out nothing anybody else reads all the time.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class SectorCache {
+
+    static final int SECTOR_SIZE = 2048;
+
+    /** a sector of a disc, the disc being told apart by its {@link OnlineDisk#media()} */
+    private record Key(Object media, long sector) {}
+
+    /** in the order they were last read in, the least recent first */
+    private final LinkedHashMap<Key, byte[]> sectors = new LinkedHashMap<>(1024, 0.75f, true);
+
+    private final Sketch sketch;
+
+    /** how many bytes this keeps at most */
+    private final long capacity;
+
+    /** the longest range read through this, anything longer is a copy, not a lookup */
+    private final long maxRange;
+
+    /** how many bytes this keeps now */
+    private long used;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * @param capacity how many bytes to keep at most
+     * @param maxRange the longest range to read through this
+     */
+    SectorCache(long capacity, long maxRange) {
+        this.capacity = capacity;
+        this.maxRange = maxRange;
+        this.sketch = new Sketch((int) Math.min(Integer.MAX_VALUE / 16, Math.max(1024, capacity / SECTOR_SIZE)));
+    }
+
+    /**
+     * @return whether a range of that many bytes of the disc should be read through
+     *         this: not of a plain image, which the os keeps in its page cache already
+     *         and is sent without a copy
+     */
+    boolean caches(OnlineDisk disk, long length) {
+        return !disk.zeroCopy() && length <= maxRange;
+    }
+
+    /**
+     * @return the bytes between the two addresses, both included, out of the cache
+     *         where they are in it, read off the disc where they are not
+     */
+    byte[] read(OnlineDisk disk, long start, long end) throws IOException {
+        Object media = disk.media();
+        byte[] data = new byte[(int) (end - start + 1)];
+        long first = start / SECTOR_SIZE;
+        long last = end / SECTOR_SIZE;
+
+        // runs of sectors not in the cache are read off the disc in one go each
+        long missing = -1;
+        for (long sector = first; sector <= last; sector++) {
+            byte[] cached = get(new Key(media, sector));
+            if (cached != null) {
+                if (missing != -1) {
+                    fill(disk, media, missing, sector - 1, start, end, data);
+                    missing = -1;
+                }
+                copy(cached, sector, start, end, data);
+            } else if (missing == -1) {
+                missing = sector;
+            }
+        }
+        if (missing != -1) {
+            fill(disk, media, missing, last, start, end, data);
+        }
+        return data;
+    }
+
+    /** Reads whole sectors off the disc into the range asked for, and offers them to the cache. */
+    private void fill(OnlineDisk disk, Object media, long first, long last, long start, long end, byte[] data) throws IOException {
+        long from = first * SECTOR_SIZE;
+        long to = Math.min((last + 1) * SECTOR_SIZE, disk.size()) - 1;
+        byte[] read = disk.read(from, to);
+        for (long sector = first; sector <= last; sector++) {
+            int offset = (int) ((sector - first) * SECTOR_SIZE);
+            byte[] bytes = new byte[Math.min(SECTOR_SIZE, read.length - offset)];
+            System.arraycopy(read, offset, bytes, 0, bytes.length);
+            put(new Key(media, sector), bytes);
+            copy(bytes, sector, start, end, data);
+        }
+    }
+
+    /** Copies what of the sector is in the range into the range. */
+    private static void copy(byte[] bytes, long sector, long start, long end, byte[] data) {
+        long from = Math.max(start, sector * SECTOR_SIZE);
+        long to = Math.min(end, sector * SECTOR_SIZE + bytes.length - 1);
+        if (from <= to) {
+            System.arraycopy(bytes, (int) (from - sector * SECTOR_SIZE), data, (int) (from - start), (int) (to - from + 1));
+        }
+    }
+
+    private synchronized byte[] get(Key key) {
+        sketch.increment(key.hashCode());
+        byte[] bytes = sectors.get(key);
+        if (bytes != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return bytes;
+    }
+
+    /** Lets the sector in if there is room, or it is read more often than what it would push out. */
+    private synchronized void put(Key key, byte[] bytes) {
+        if (bytes.length > capacity || sectors.containsKey(key)) {
+            return;
+        }
+        int frequency = sketch.frequency(key.hashCode());
+        Iterator<Map.Entry<Key, byte[]>> i = sectors.entrySet().iterator();
+        while (used + bytes.length > capacity) {
+            Map.Entry<Key, byte[]> victim = i.next();
+            if (frequency <= sketch.frequency(victim.getKey().hashCode())) {
+                rejections.increment();
+                return;
+            }
+            i.remove();
+            used -= victim.getValue().length;
+            evictions.increment();
+        }
+        sectors.put(key, bytes);
+        used += bytes.length;
+    }
+
+    /** @return how many sectors were found in the cache */
+    long hits() {
+        return hits.sum();
+    }
+
+    /** @return how many sectors had to be read off a disc */
+    long misses() {
+        return misses.sum();
+    }
+
+    /** @return how many sectors were pushed out for ones read more often */
+    long evictions() {
+        return evictions.sum();
+    }
+
+    /** @return how many sectors read off a disc were not let in, being read too seldom */
+    long rejections() {
+        return rejections.sum();
+    }
+
+    /** @return how many bytes this keeps now */
+    synchronized long used() {
+        return used;
+    }
+
+    /** @return how many bytes this keeps at most */
+    long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Roughly how often something was asked for lately: a count-min sketch of four
+     * rows of counters up to 15, all halved every so often, so what was read a lot
+     * once and no longer is read fades.
+     */
+    static final class Sketch {
+
+        private static final int DEPTH = 4;
+
+        private static final int[] SEEDS = {0x97cb3127, 0xb4b82e4d, 0x6a09e667, 0x3c6ef372};
+
+        private final byte[] counters;
+
+        private final int mask;
+
+        /** how many increments there are between halvings */
+        private final int period;
+
+        private int additions;
+
+        /** @param expected how many things are counted at once, roughly */
+        Sketch(int expected) {
+            int width = Integer.highestOneBit(Math.max(16, expected) - 1) << 1;
+            this.counters = new byte[width * DEPTH];
+            this.mask = width - 1;
+            this.period = 10 * expected;
+        }
+
+        private int index(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+            h ^= h >>> 16;
+            return row * (mask + 1) + (h & mask);
+        }
+
+        void increment(int hash) {
+            for (int row = 0; row < DEPTH; row++) {
+                int i = index(hash, row);
+                if (counters[i] < 15) {
+                    counters[i]++;
+                }
+            }
+            if (++additions >= period) {
+                additions = 0;
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>= 1;
+                }
+            }
+        }
+
+        int frequency(int hash) {
+            int frequency = 15;
+            for (int row = 0; row < DEPTH; row++) {
+                frequency = Math.min(frequency, counters[index(hash, row)]);
+            }
+            return frequency;
+        }
+    }
+}
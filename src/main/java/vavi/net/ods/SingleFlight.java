@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * The reads of one disc going on right now, for a read of a range some of them are
+ * reading already to wait for those and take its part of what they read, rather
+ * than to read it again. A room full of clients mounting the same disc at once ask
+ * for the same first few hundred kilobytes within a few milliseconds of each other;
+ * the disc is read for the first of them, and the rest wait on that one read.
+ * <p>
+ * Only the part of a read nobody is reading yet is read, the rest comes out of the
+ * reads it overlaps.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class SingleFlight {
+
+    /** one read going on, both ends included */
+    private static final class Flight {
+        final long start;
+        final long end;
+        final CompletableFuture<byte[]> result = new CompletableFuture<>();
+
+        Flight(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private final ElevatorScheduler.Reader reader;
+
+    private final List<Flight> flights = new ArrayList<>();
+
+    private final Lock lock = new ReentrantLock();
+
+    private final LongAdder joined = new LongAdder();
+
+    /** how many reads of any disc joined another, discs gone included, for a counter that never goes down */
+    static final LongAdder joinedAll = new LongAdder();
+
+    /** @param reader what actually reads the disc */
+    SingleFlight(ElevatorScheduler.Reader reader) {
+        this.reader = reader;
+    }
+
+    /** @return length bytes from the given position on, read by this read or another */
+    byte[] read(long position, int length) throws IOException {
+        long end = position + length - 1;
+        Flight flight;
+        boolean own;
+        lock.lock();
+        try {
+            flight = overlapping(position, end);
+            own = flight == null;
+            if (own) {
+                flight = new Flight(position, end);
+                flights.add(flight);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (own) {
+            return fly(flight);
+        }
+
+        joined.increment();
+        joinedAll.increment();
+        byte[] data = new byte[length];
+        // what comes before and after the read joined is read apart, by whoever reads it
+        if (position < flight.start) {
+            byte[] before = read(position, (int) (flight.start - position));
+            System.arraycopy(before, 0, data, 0, before.length);
+        }
+        if (end > flight.end) {
+            byte[] after = read(flight.end + 1, (int) (end - flight.end));
+            System.arraycopy(after, 0, data, (int) (flight.end + 1 - position), after.length);
+        }
+        long from = Math.max(position, flight.start);
+        long to = Math.min(end, flight.end);
+        System.arraycopy(await(flight), (int) (from - flight.start), data, (int) (from - position), (int) (to - from + 1));
+        return data;
+    }
+
+    /** @return a read going on that overlaps the range, null for none */
+    private Flight overlapping(long start, long end) {
+        for (Flight flight : flights) {
+            if (flight.start <= end && start <= flight.end) {
+                return flight;
+            }
+        }
+        return null;
+    }
+
+    /** Reads for the flight, and for whoever joined it. */
+    private byte[] fly(Flight flight) throws IOException {
+        try {
+            byte[] data = reader.read(flight.start, (int) (flight.end - flight.start + 1));
+            flight.result.complete(data);
+            return data;
+        } catch (IOException | RuntimeException e) {
+            flight.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            lock.lock();
+            try {
+                flights.remove(flight);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /** @return what the flight read, once it has */
+    private static byte[] await(Flight flight) throws IOException {
+        try {
+            return flight.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /** @return how many reads are going on */
+    int flying() {
+        lock.lock();
+        try {
+            return flights.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return how many reads took what another read read, all or part of it */
+    long joined() {
+        return joined.sum();
+    }
+}
@@ -86,7 +86,23 @@ public abstract class Tools {
         if (ext == null) {
             return false;
         } else {
-            return Arrays.asList("iso", "img", "dmg").contains(ext);
+            return Arrays.asList("iso", "img", "dmg", "cso", "zso").contains(ext.toLowerCase());
+        }
+    }
+
+    /** @return how an image is compressed a block at a time, null for not at all */
+    CompressedIso.Format compression(Path path) {
+        String ext = getExt(path.getFileName().toString());
+        if (ext == null) {
+            return null;
+        }
+        switch (ext.toLowerCase()) {
+        case "cso":
+            return CompressedIso.Format.CSO;
+        case "zso":
+            return CompressedIso.Format.ZSO;
+        default:
+            return null;
         }
     }
 
@@ -94,7 +110,9 @@ public abstract class Tools {
      * Retrieves disc image files.
      */
     public List<Path> listImages(String path) throws IOException {
-        return Files.list(Paths.get(path)).filter(this::is_image).collect(Collectors.toList());
+        try (Stream<Path> files = Files.list(Paths.get(path))) {
+            return files.filter(this::is_image).collect(Collectors.toList());
+        }
     }
 
     /**
@@ -114,7 +132,8 @@ public abstract class Tools {
      */
     public String getLabel(Path path) throws IOException {
         try {
-            String label = readLabel(path);
+            Volume volume = volume(path);
+            String label = volume != null ? volume.label() : readLabel(path);
             if (label != null && !label.isBlank()) {
                 return label.trim();
             }
@@ -127,10 +146,34 @@ public abstract class Tools {
         return extension == null ? name : name.substring(0, name.length() - (extension.length() + 1));
     }
 
+    /** @return the volume read out of the disc itself, null when it cannot be */
+    private static Volume volume(Path path) {
+        try {
+            return Volume.probe(path);
+        } catch (IOException e) {
+            logging.fine("cannot read the volume of " + path + ": " + e);
+            return null;
+        }
+    }
+
     /** @return the volume label as the platform's tooling reports it, or null */
     protected abstract String readLabel(Path path) throws IOException;
 
-    public abstract int[] blockSize(Path path) throws IOException;
+    /**
+     * @return the logical block size and the volume size in blocks, read in process
+     *         out of the volume descriptors, as the platform's tooling reports them
+     *         for a format not read that way
+     */
+    public long[] blockSize(Path path) throws IOException {
+        Volume volume = volume(path);
+        if (volume != null) {
+            return new long[] { volume.blockSize(), volume.blocks() };
+        }
+        return readBlockSize(path);
+    }
+
+    /** @return the logical block size and the volume size in blocks as the platform's tooling reports them */
+    protected abstract long[] readBlockSize(Path path) throws IOException;
 
     /** for real optical disk */
     public abstract OnlineDiskState state(Path path) throws IOException;
@@ -188,20 +231,20 @@ public abstract class Tools {
         }
 
         @Override
-        public int[] blockSize(Path path) throws IOException {
+        protected long[] readBlockSize(Path path) throws IOException {
             List<String> out = Tools.exec(isoinfo, "-d", "-i", path.toString());
 
-            int blockSize = 0, volSize = 0;
+            long blockSize = 0, volSize = 0;
             for (String line : out) {
                 if (line.startsWith("Volume size is:") && line.length() > 16) {
-                    volSize = Integer.parseInt(line.substring(16));
+                    volSize = Long.parseLong(line.substring(16));
                 }
 
                 if (line.startsWith("Logical block size is:") && line.length() > 23) {
-                    blockSize = Integer.parseInt(line.substring(23));
+                    blockSize = Long.parseLong(line.substring(23));
                 }
             }
-            return new int[] { blockSize, volSize };
+            return new long[] { blockSize, volSize };
         }
 
         @Override
@@ -265,20 +308,20 @@ public abstract class Tools {
         }
 
         @Override
-        public int[] blockSize(Path path) throws IOException {
+        protected long[] readBlockSize(Path path) throws IOException {
             List<String> out = Tools.exec("isoinfo", "-d", "-i", path.toString());
 
-            int block_size = 0, vol_size = 0;
+            long block_size = 0, vol_size = 0;
             for (String line : out) {
                 if (line.startsWith("Volume size is:") && line.length() > 16) {
-                    vol_size = Integer.parseInt(line.substring(16));
+                    vol_size = Long.parseLong(line.substring(16));
                 }
 
                 if (line.startsWith("Logical block size is:") && line.length() > 23) {
-                    block_size = Integer.parseInt(line.substring(23));
+                    block_size = Long.parseLong(line.substring(23));
                 }
             }
-            return new int[] { block_size, vol_size };
+            return new long[] { block_size, vol_size };
         }
 
         @Override
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * The descriptors of a UDF disc, what DVDs and Blu-ray discs are, alone or with an
+ * iso 9660 bridge nobody looks at: the anchor at sector 256 points at the volume
+ * descriptor sequence, which holds the logical volume descriptor with the label and
+ * the block size, and the partition descriptor with where the partition ends. The
+ * file set descriptor the logical volume points at has the label again, for a
+ * logical volume descriptor without one. Three reads in all.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+final class UdfVolume {
+
+    /** the sector size of the optical media UDF is read on */
+    static final int SECTOR_SIZE = 2048;
+
+    /** where the anchor volume descriptor pointer is */
+    static final int ANCHOR = 256;
+
+    /** how many sectors of the volume descriptor sequence are read at most */
+    static final int SEQUENCE = 32;
+
+    static final int PRIMARY_VOLUME_DESCRIPTOR = 1;
+    static final int ANCHOR_VOLUME_DESCRIPTOR_POINTER = 2;
+    static final int PARTITION_DESCRIPTOR = 5;
+    static final int LOGICAL_VOLUME_DESCRIPTOR = 6;
+    static final int TERMINATING_DESCRIPTOR = 8;
+    static final int FILE_SET_DESCRIPTOR = 256;
+
+    private UdfVolume() {
+    }
+
+    /** @return the volume, null when there is no anchor */
+    static Volume read(ElevatorScheduler.Reader reader) throws IOException {
+        ByteBuffer anchor = sector(reader.read((long) ANCHOR * SECTOR_SIZE, SECTOR_SIZE), 0);
+        if (anchor == null || tag(anchor, ANCHOR) != ANCHOR_VOLUME_DESCRIPTOR_POINTER) {
+            return null;
+        }
+        long length = anchor.getInt(16) & 0xffff_ffffL;
+        long location = anchor.getInt(20) & 0xffff_ffffL;
+        int sectors = (int) Math.min(SEQUENCE, (length + SECTOR_SIZE - 1) / SECTOR_SIZE);
+
+        byte[] sequence = reader.read(location * SECTOR_SIZE, sectors * SECTOR_SIZE);
+        String label = null;
+        String primary = null;
+        long blockSize = SECTOR_SIZE;
+        long partitionStart = -1;
+        long partitionEnd = 0;
+        int fileSet = -1;
+        for (int i = 0; i < sectors; i++) {
+            ByteBuffer descriptor = sector(sequence, i);
+            if (descriptor == null) {
+                break;
+            }
+            int tag = tag(descriptor, location + i);
+            if (tag == TERMINATING_DESCRIPTOR || tag == -1) {
+                break;
+            }
+            switch (tag) {
+            case PRIMARY_VOLUME_DESCRIPTOR:
+                primary = dstring(descriptor, 24, 32);
+                break;
+            case LOGICAL_VOLUME_DESCRIPTOR:
+                blockSize = descriptor.getInt(212) & 0xffff_ffffL;
+                label = dstring(descriptor, 84, 128);
+                // the long_ad of the file set descriptor, a block in the partition
+                fileSet = descriptor.getInt(252);
+                break;
+            case PARTITION_DESCRIPTOR:
+                long start = descriptor.getInt(188) & 0xffff_ffffL;
+                long end = start + (descriptor.getInt(192) & 0xffff_ffffL);
+                if (partitionStart == -1 || start < partitionStart) {
+                    partitionStart = start;
+                }
+                partitionEnd = Math.max(partitionEnd, end);
+                break;
+            }
+        }
+        if (partitionStart == -1 || blockSize == 0) {
+            return null;
+        }
+
+        if (label == null && fileSet >= 0) {
+            long sector = partitionStart + (long) fileSet * blockSize / SECTOR_SIZE;
+            ByteBuffer descriptor = sector(reader.read(sector * SECTOR_SIZE, SECTOR_SIZE), 0);
+            if (descriptor != null && tag(descriptor, fileSet) == FILE_SET_DESCRIPTOR) {
+                label = dstring(descriptor, 112, 128);
+            }
+        }
+        if (label == null) {
+            label = primary;
+        }
+
+        return new Volume(label, blockSize, partitionEnd * SECTOR_SIZE / blockSize);
+    }
+
+    /** @return the sector of the ones read, null when they end before it */
+    private static ByteBuffer sector(byte[] sectors, int i) {
+        if ((i + 1) * SECTOR_SIZE > sectors.length) {
+            return null;
+        }
+        return ByteBuffer.wrap(sectors, i * SECTOR_SIZE, SECTOR_SIZE).slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @param location where the descriptor says it is, the sector it is read from, or
+     *                 for one in a partition the block in the partition
+     * @return the tag identifier, -1 when this is no descriptor: the checksum is wrong,
+     *         or it is not where it says it is
+     */
+    private static int tag(ByteBuffer descriptor, long location) {
+        int sum = 0;
+        for (int i = 0; i < 16; i++) {
+            if (i != 4) {
+                sum += descriptor.get(i) & 0xff;
+            }
+        }
+        if ((sum & 0xff) != (descriptor.get(4) & 0xff) || (descriptor.getInt(12) & 0xffff_ffffL) != location) {
+            return -1;
+        }
+        return descriptor.getShort(0) & 0xffff;
+    }
+
+    /**
+     * @return the d-string of the field, its last byte how many bytes of it are used,
+     *         the first of those saying whether it is 8 or 16 bits a character; null
+     *         when empty
+     */
+    static String dstring(ByteBuffer descriptor, int offset, int length) {
+        int used = descriptor.get(offset + length - 1) & 0xff;
+        if (used <= 1 || used >= length) {
+            return null;
+        }
+        byte[] bytes = new byte[used - 1];
+        descriptor.get(offset + 1, bytes);
+        String value;
+        switch (descriptor.get(offset)) {
+        case 8:
+            value = new String(bytes, StandardCharsets.ISO_8859_1);
+            break;
+        case 16:
+            value = new String(bytes, StandardCharsets.UTF_16BE);
+            break;
+        default:
+            return null;
+        }
+        value = value.replace('\0', ' ').trim();
+        return value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * An image uploaded into the images directory: the body streamed into a file beside
+ * where it is to go, hashed as it is written and its start kept for the volume
+ * descriptors, forced to the disk and only then linked under its name, which fails
+ * when the name is taken, however late. The chunks of a plain image are hashed as it
+ * is written as well, and the hashes kept beside it, for it to be checked as it is
+ * served without being read once more for that. Nobody sees an image half uploaded, and a
+ * server going down in the middle leaves a dot file behind, not a broken image.
+ *
+ * @param path where the image is
+ * @param size how big it is
+ * @param hash the sha-256 of it, in hex
+ * @param volume what its volume descriptors say, null when they say nothing known
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+record Upload(Path path, long size, String hash, Volume volume) {
+
+    static final Logger logging = Logger.getLogger(Upload.class.getName());
+
+    /** how much is read off the connection at a time */
+    static final int BUFFER_SIZE = 1024 * 1024;
+
+    /** how much of the start of an image is kept, up to where the volume descriptors are read from */
+    static final int HEAD_SIZE = 1024 * 1024;
+
+    /** the buffers uploads read into, one per upload going on, kept for the next ones */
+    private static final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(4);
+
+    /**
+     * @param name the name to give the image, a file name and nothing more
+     * @return whether an image may be uploaded under the name: no path of any kind,
+     *         not hidden, and of an extension served
+     */
+    static boolean allowed(String name, Tools tools) {
+        if (name == null || name.isEmpty() || name.startsWith(".") ||
+                name.contains("/") || name.contains("\\") || name.contains("\0")) {
+            return false;
+        }
+        try {
+            Path path = Path.of(name);
+            return path.getNameCount() == 1 && !path.isAbsolute() && tools.is_image(path);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stores what is read under the name in the directory.
+     *
+     * @throws FileAlreadyExistsException when there is an image of the name already
+     */
+    static Upload store(InputStream in, Path directory, String name) throws IOException {
+        Path target = directory.resolve(name);
+        if (!target.normalize().getParent().equals(directory.normalize())) {
+            throw new IllegalArgumentException("not in the images directory: " + name);
+        }
+        if (Files.exists(target)) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        // a compressed image is hashed as the disc it is served as, by the scrubber
+        ChunkHashes.Builder chunks = Tools.getInstance().compression(target) == null ? new ChunkHashes.Builder() : null;
+
+        Path temporary = Files.createTempFile(directory, ".upload-", ".tmp");
+        byte[] buffer = buffers.poll();
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+        }
+        try {
+            byte[] head = new byte[HEAD_SIZE];
+            long size = 0;
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                int r;
+                while ((r = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+                    digest.update(buffer, 0, r);
+                    if (chunks != null) {
+                        chunks.update(buffer, 0, r);
+                    }
+                    if (size < HEAD_SIZE) {
+                        System.arraycopy(buffer, 0, head, (int) size, (int) Math.min(r, HEAD_SIZE - size));
+                    }
+                    ByteBuffer data = ByteBuffer.wrap(buffer, 0, r);
+                    while (data.hasRemaining()) {
+                        out.write(data);
+                    }
+                    size += r;
+                }
+                out.force(true);
+            }
+
+            int kept = (int) Math.min(size, HEAD_SIZE);
+            Volume volume = Volume.probe((position, length) -> position >= kept ? new byte[0] :
+                    Arrays.copyOfRange(head, (int) position, (int) Math.min(position + length, kept)));
+
+            publish(temporary, target);
+            Files.deleteIfExists(temporary);
+            sync(directory);
+            if (chunks != null) {
+                save(chunks, target);
+            }
+            return new Upload(target, size, HexFormat.of().formatHex(digest.digest()), volume);
+        } finally {
+            Files.deleteIfExists(temporary);
+            buffers.offer(buffer);
+        }
+    }
+
+    /**
+     * Gives the file the name, the name being taken in one step that fails when it is
+     * taken already: a link where the file system has them, a file of the name made
+     * new and then replaced where it does not, e.g. on fat.
+     *
+     * @throws FileAlreadyExistsException when there is a file of the name
+     */
+    private static void publish(Path temporary, Path target) throws IOException {
+        try {
+            Files.createLink(target, temporary);
+            return;
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            logging.fine("no link: " + target + ": " + e);
+        }
+        Files.newByteChannel(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE).close();
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** Keeps the hashes beside the image, the image being there whether they are or not. */
+    private static void save(ChunkHashes.Builder chunks, Path image) {
+        try {
+            chunks.build(Files.readAttributes(image, BasicFileAttributes.class)).save(image);
+        } catch (IOException e) {
+            logging.log(Level.WARNING, "cannot keep the hashes of " + image + ": " + e.getMessage(), e);
+        }
+    }
+
+    /** Forces the directory's entries to the disk, where the os lets a directory be opened for that. */
+    private static void sync(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logging.fine("cannot sync " + directory + ": " + e);
+        }
+    }
+}
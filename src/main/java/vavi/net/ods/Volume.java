@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+
+/**
+ * What a client is told about a disc before it reads any of it: its label, and how
+ * big it is, in logical blocks of some size. Read out of the volume descriptors of
+ * the disc itself, in process, rather than by asking cdrtools for each disc.
+ *
+ * @param label the volume label, null when the disc has none
+ * @param blockSize how big a logical block is
+ * @param blocks how many logical blocks the volume takes
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+record Volume(String label, long blockSize, long blocks) {
+
+    static final Logger logging = Logger.getLogger(Volume.class.getName());
+
+    /** @return how big the volume is */
+    long size() {
+        return blockSize * blocks;
+    }
+
+    /**
+     * Reads what a disc is. A disc of more than one format at once is labelled as the
+     * format a mac mounts it as has it: HFS on a hybrid cd, UDF on a UDF bridge disc -
+     * iso 9660 cuts labels short. It is as big as the biggest of them says.
+     *
+     * @param reader reads the disc, may come back short at its end
+     * @return the volume, null when the disc is of no format known
+     */
+    static Volume probe(ElevatorScheduler.Reader reader) throws IOException {
+        Volume[] volumes = { read(HfsVolume::read, reader), read(UdfVolume::read, reader), read(IsoVolume::read, reader) };
+
+        String label = null;
+        Volume biggest = null;
+        for (Volume volume : volumes) {
+            if (volume == null) {
+                continue;
+            }
+            if (label == null) {
+                label = volume.label();
+            }
+            if (biggest == null || volume.size() > biggest.size()) {
+                biggest = volume;
+            }
+        }
+        return biggest == null ? null : new Volume(label, biggest.blockSize(), biggest.blocks());
+    }
+
+    /** what reads a volume of one format */
+    private interface Format {
+        /** @return the volume, null when there is none of the format */
+        Volume read(ElevatorScheduler.Reader reader) throws IOException;
+    }
+
+    /**
+     * @return the volume, null as well when the disc is so broken as not to make
+     *         sense to the format: anybody can upload an image, and one bad image is
+     *         not to keep the others from being listed
+     */
+    private static Volume read(Format format, ElevatorScheduler.Reader reader) throws IOException {
+        try {
+            return format.read(reader);
+        } catch (RuntimeException e) {
+            logging.fine("not a volume: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads what a disc image or a drive is, opening it for no more than that.
+     *
+     * @return the volume, null when the disc is of no format known
+     */
+    static Volume probe(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return probe((position, length) -> read(channel, position, length));
+        }
+    }
+
+    /**
+     * @return up to length bytes from the given position on, fewer at the end - the
+     *         size of a device is not known before it is read
+     */
+    static byte[] read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                break;
+            }
+        }
+        return buffer.position() == length ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * When the discs are announced as they change, told by an announcer that only keeps
+ * what it was asked to announce: a burst of changes once, changes that never stop
+ * no later than {@link Bonjour#MAX_DELAY} says, and the same discs not again.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+@Timeout(60)
+class BonjourUpdateTest {
+
+    static final long QUIET = 300;
+
+    static final long MAX_DELAY = 1000;
+
+    /** what was announced, and when */
+    record Announcement(long time, Map<String, String> text) {}
+
+    static class Recorder implements Bonjour.Announcer {
+        final List<Announcement> announcements = new ArrayList<>();
+        final Lock lock = new ReentrantLock();
+
+        @Override
+        public void announce(Map<String, String> text) {
+            lock.lock();
+            try {
+                announcements.add(new Announcement(System.currentTimeMillis(), text));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        List<Announcement> announcements() {
+            lock.lock();
+            try {
+                return new ArrayList<>(announcements);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @TempDir
+    Path root;
+
+    OdsServer server;
+
+    Recorder recorder;
+
+    Bonjour bonjour;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        Files.write(root.resolve("FIRST.iso"), Iso9660.of("FIRST"));
+        server = new OdsServer(root.toString(), OdsServerTest.freePort(), s -> null);
+        recorder = new Recorder();
+        bonjour = new Bonjour(server, recorder, QUIET, MAX_DELAY);
+    }
+
+    @AfterEach
+    void afterEach() throws Exception {
+        bonjour.close();
+    }
+
+    /** Adds an image the way the watcher tells of one, and tells bonjour. */
+    void add(String label) throws Exception {
+        Path image = root.resolve(label + ".iso");
+        Files.write(image, Iso9660.of(label));
+        server.update(Set.of(image));
+        bonjour.update();
+    }
+
+    @Test
+    @DisplayName("images added one after the other are announced once, when they stop coming")
+    void burst() throws Exception {
+        assertEquals(1, recorder.announcements().size());
+
+        for (int i = 0; i < 5; i++) {
+            add("BURST" + i);
+            Thread.sleep(20);
+        }
+        Thread.sleep(QUIET * 3);
+
+        List<Announcement> announcements = recorder.announcements();
+        assertEquals(2, announcements.size());
+        assertEquals(1 + 6, announcements.get(1).text().size(), "sys and every disc");
+    }
+
+    @Test
+    @DisplayName("images that never stop coming are announced no later than the longest delay")
+    void continuous() throws Exception {
+        long first = System.currentTimeMillis();
+        long until = first + MAX_DELAY * 3;
+        for (int i = 0; System.currentTimeMillis() < until; i++) {
+            add("MORE" + i);
+            Thread.sleep(QUIET / 3);
+        }
+
+        List<Announcement> announcements = recorder.announcements();
+        assertTrue(announcements.size() >= 3, "announced " + announcements.size() + " times");
+        long last = first;
+        for (Announcement announcement : announcements.subList(1, announcements.size())) {
+            // the scheduler may be a little late, never a quiet period late
+            assertTrue(announcement.time() - last <= MAX_DELAY + QUIET / 2,
+                       (announcement.time() - last) + " ms after the one before");
+            last = announcement.time();
+        }
+    }
+
+    @Test
+    @DisplayName("the same discs are not announced again")
+    void unchanged() throws Exception {
+        bonjour.update();
+        bonjour.update();
+        Thread.sleep(QUIET * 3);
+        bonjour.announce();
+
+        assertEquals(1, recorder.announcements().size());
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vavi.net.ods.ByteRanges.Range;
+
+
+/**
+ * Parsing the {@code Range} header, which every read of a disc has.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ByteRangesBenchmark {
+
+    /** what a mac asks for, an open ended one, the last bytes, and several at once out of order */
+    @Param({"bytes=32768-34815", "bytes=1048576-", "bytes=-512", "bytes=65536-131071,0-2047,2048-4095,1048576-1050623"})
+    String header;
+
+    /** a dvd */
+    static final long SIZE = 4_700_000_000L;
+
+    @Benchmark
+    public List<Range> parse() {
+        return ByteRanges.parse(header, SIZE);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import vavi.net.ods.ByteRanges.Range;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * What {@link ByteRanges} makes of a {@code Range} header.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class ByteRangesTest {
+
+    static final long SIZE = 10_000;
+
+    @Test
+    @DisplayName("one range is one range")
+    void one() {
+        assertEquals(List.of(new Range(0, 15)), ByteRanges.parse("bytes=0-15", SIZE));
+    }
+
+    @Test
+    @DisplayName("an open end, a suffix and an end off the disc all end at the end of the disc")
+    void ends() {
+        assertEquals(List.of(new Range(9000, SIZE - 1)), ByteRanges.parse("bytes=9000-", SIZE));
+        assertEquals(List.of(new Range(SIZE - 500, SIZE - 1)), ByteRanges.parse("bytes=-500", SIZE));
+        assertEquals(List.of(new Range(0, SIZE - 1)), ByteRanges.parse("bytes=-50000", SIZE));
+        assertEquals(List.of(new Range(9990, SIZE - 1)), ByteRanges.parse("bytes=9990-99999999999999999999999", SIZE));
+    }
+
+    @Test
+    @DisplayName("several ranges come in the order they are on the disc, the overlapping and touching ones made one")
+    void several() {
+        assertEquals(List.of(new Range(0, 99), new Range(200, 399), new Range(1000, 1099)),
+                     ByteRanges.parse("bytes=1000-1099, 0-49, 200-299, 50-99, 250-399", SIZE));
+    }
+
+    @Test
+    @DisplayName("a range off the disc is dropped, and with nothing left there is nothing to send")
+    void offTheDisc() {
+        assertEquals(List.of(new Range(0, 9)), ByteRanges.parse("bytes=0-9,20000-20010", SIZE));
+        assertTrue(ByteRanges.parse("bytes=20000-20010", SIZE).isEmpty());
+        assertTrue(ByteRanges.parse("bytes=100-10", SIZE).isEmpty());
+        assertTrue(ByteRanges.parse("bytes=-0", SIZE).isEmpty());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "bytes", "bytes=", "bytes=-", "bytes=a-b", "items=0-15", "bytes=0-15,,16-20"})
+    @DisplayName("a header that makes no sense is no range at all")
+    void nonsense(String requested) {
+        assertNull(ByteRanges.parse(requested, SIZE));
+    }
+
+    @Test
+    @DisplayName("no header is no range either")
+    void none() {
+        assertNull(ByteRanges.parse(null, SIZE));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import vavi.net.ods.OnlineDisk.DiskImage;
+import vavi.net.ods.OnlineDisk.OpticalDrive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * The discs served at one moment, under their names.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class CatalogTest {
+
+    @Test
+    @DisplayName("the drives are named first, the images after them")
+    void named() {
+        OnlineDisk drive = new OpticalDrive(Paths.get("/dev/sr0"));
+        OnlineDisk one = new DiskImage(Paths.get("one.iso"));
+        OnlineDisk two = new DiskImage(Paths.get("two.iso"));
+
+        Catalog catalog = Catalog.of(List.of(drive), List.of(one, two));
+
+        assertEquals(List.of("disk0", "disk1", "disk2"), new ArrayList<>(catalog.disks().keySet()));
+        assertSame(drive, catalog.get("disk0"));
+        assertSame(two, catalog.get("disk2"));
+        assertNull(catalog.get("disk3"));
+    }
+
+    @Test
+    @DisplayName("a disc keeps its name in the next catalog, and a name gone is not given again")
+    void stable() {
+        OnlineDisk one = new DiskImage(Paths.get("one.iso"));
+        OnlineDisk two = new DiskImage(Paths.get("two.iso"));
+        OnlineDisk three = new DiskImage(Paths.get("three.iso"));
+        Catalog first = Catalog.of(List.of(), List.of(one, two));
+
+        Catalog second = Catalog.of(List.of(), List.of(two, three), first);
+
+        assertSame(two, second.get("disk1"));
+        assertSame(three, second.get("disk2"));
+        assertNull(second.get("disk0"));
+    }
+
+    @Test
+    @DisplayName("images added, removed and listed again all over keep their names")
+    void reconciled(@TempDir Path root) throws Exception {
+        for (String label : new String[] {"ALPHA", "BRAVO", "CHARLIE"}) {
+            Files.write(root.resolve(label + ".iso"), Iso9660.of(label));
+        }
+        OdsServer server = new OdsServer(root.toString(), OdsServerTest.freePort(), s -> null);
+        Map<String, Path> before = names(server);
+
+        Path delta = root.resolve("DELTA.iso");
+        Files.write(delta, Iso9660.of("DELTA"));
+        server.update(Set.of(delta));
+        Path bravo = root.resolve("BRAVO.iso");
+        Files.delete(bravo);
+        server.update(Set.of(bravo));
+        server.update(); // the reconcile, listing the directory all over
+
+        Map<String, Path> after = names(server);
+        assertEquals(3, after.size(), "delta in, bravo out: " + after);
+        before.forEach((name, path) -> {
+            if (!path.equals(bravo)) {
+                assertEquals(path, after.get(name), name);
+            }
+        });
+        String name = after.entrySet().stream()
+                .filter(e -> e.getValue().equals(delta))
+                .map(Map.Entry::getKey)
+                .findFirst()
+                .orElseThrow();
+        assertFalse(before.containsKey(name), "delta took the name of " + before.get(name));
+    }
+
+    /** @return the paths served by their names */
+    static Map<String, Path> names(OdsServer server) throws Exception {
+        Map<String, Path> names = new HashMap<>();
+        server.disks().forEach((name, disk) -> names.put(name, disk.path()));
+        return names;
+    }
+
+    @Test
+    @DisplayName("a catalog does not change, whatever is done to what it was made of")
+    void immutable() {
+        List<OnlineDisk> images = new ArrayList<>(List.of(new DiskImage(Paths.get("one.iso"))));
+        Catalog catalog = Catalog.of(List.of(), images);
+
+        images.add(new DiskImage(Paths.get("two.iso")));
+
+        assertEquals(1, catalog.images().size());
+        assertEquals(1, catalog.disks().size());
+        assertThrows(UnsupportedOperationException.class, () -> catalog.disks().put("disk9", null));
+        assertThrows(UnsupportedOperationException.class, () -> catalog.images().clear());
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import vavi.net.ods.OnlineDisk.DiskImage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * The hashes of the chunks of an image, kept beside it.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class ChunkHashesTest {
+
+    static final int SIZE = ChunkHashes.CHUNK_SIZE * 3 + 12345;
+
+    static Path image(Path dir) throws IOException {
+        byte[] data = new byte[SIZE];
+        new Random(22).nextBytes(data);
+        Path image = dir.resolve("disc.iso");
+        Files.write(image, data);
+        return image;
+    }
+
+    static ChunkHashes build(Path image) throws IOException {
+        try (OnlineDisk disk = new DiskImage(image)) {
+            return ChunkHashes.build(disk.reader(), disk.size(), Files.readAttributes(image, BasicFileAttributes.class));
+        }
+    }
+
+    @Test
+    @DisplayName("the hashes are read back as they were written, for the image as it is")
+    void saved(@TempDir Path dir) throws Exception {
+        Path image = image(dir);
+        ChunkHashes hashes = build(image);
+        assertEquals(4, hashes.chunks());
+        hashes.save(image);
+
+        ChunkHashes loaded = ChunkHashes.load(image);
+        assertNotNull(loaded);
+        assertArrayEquals(hashes.root(), loaded.root());
+
+        // touched: hashed again
+        Files.setLastModifiedTime(image, FileTime.fromMillis(Files.getLastModifiedTime(image).toMillis() + 2000));
+        assertNull(ChunkHashes.load(image));
+    }
+
+    @Test
+    @DisplayName("hashes that do not add up to their root are not taken")
+    void tampered(@TempDir Path dir) throws Exception {
+        Path image = image(dir);
+        build(image).save(image);
+
+        Path file = ChunkHashes.file(image);
+        byte[] sums = Files.readAllBytes(file);
+        sums[40] ^= 1; // the first leaf
+        Files.write(file, sums);
+        assertNull(ChunkHashes.load(image));
+    }
+
+    @Test
+    @DisplayName("only the chunks a range touches are checked, and a rotten one is found")
+    void verify(@TempDir Path dir) throws Exception {
+        Path image = image(dir);
+        ChunkHashes hashes = build(image);
+
+        byte[] data = Files.readAllBytes(image);
+        data[ChunkHashes.CHUNK_SIZE * 2 + 100] ^= 1;
+        Files.write(image, data);
+
+        try (OnlineDisk disk = new DiskImage(image)) {
+            assertDoesNotThrow(() -> hashes.verify(disk.reader(), 0, ChunkHashes.CHUNK_SIZE * 2L - 1));
+            assertDoesNotThrow(() -> hashes.verify(disk.reader(), ChunkHashes.CHUNK_SIZE * 3L, SIZE - 1));
+            assertThrows(IOException.class, () -> hashes.verify(disk.reader(), ChunkHashes.CHUNK_SIZE * 2L - 10, ChunkHashes.CHUNK_SIZE * 2L + 10));
+            // and it is not taken as intact after that
+            assertThrows(IOException.class, () -> hashes.verify(disk.reader(), ChunkHashes.CHUNK_SIZE * 2L, ChunkHashes.CHUNK_SIZE * 2L));
+        }
+    }
+
+    @Test
+    @DisplayName("hashes fed the disc as it goes by are the hashes read off it")
+    void fed(@TempDir Path dir) throws Exception {
+        Path image = image(dir);
+        byte[] data = Files.readAllBytes(image);
+
+        ChunkHashes.Builder builder = new ChunkHashes.Builder();
+        // pieces that do not line up with the chunks
+        for (int position = 0; position < data.length; position += 300_001) {
+            builder.update(data, position, Math.min(300_001, data.length - position));
+        }
+        ChunkHashes fed = builder.build(Files.readAttributes(image, BasicFileAttributes.class));
+
+        assertEquals(4, fed.chunks());
+        assertArrayEquals(build(image).root(), fed.root());
+    }
+
+    @Test
+    @DisplayName("a chunk checked comes with the bytes it was read for, once")
+    void check(@TempDir Path dir) throws Exception {
+        Path image = image(dir);
+        ChunkHashes hashes = build(image);
+        byte[] data = Files.readAllBytes(image);
+
+        try (OnlineDisk disk = new DiskImage(image)) {
+            long start = ChunkHashes.CHUNK_SIZE + 10;
+            long end = ChunkHashes.CHUNK_SIZE + 2047;
+            assertArrayEquals(Arrays.copyOfRange(data, (int) start, (int) end + 1), hashes.check(disk.reader(), start, end));
+            // found intact already, not read again
+            assertNull(hashes.check(disk.reader(), start, end));
+            assertThrows(IllegalArgumentException.class, () -> hashes.check(disk.reader(), 0, ChunkHashes.CHUNK_SIZE));
+        }
+
+        data[100] ^= 1;
+        Files.write(image, data);
+        try (OnlineDisk disk = new DiskImage(image)) {
+            assertThrows(IOException.class, () -> hashes.check(disk.reader(), 0, 2047));
+        }
+    }
+
+    @Test
+    @DisplayName("a range of one chunk has a digest, any other has none")
+    void digest(@TempDir Path dir) throws Exception {
+        Path image = image(dir);
+        ChunkHashes hashes = build(image);
+        byte[] data = Files.readAllBytes(image);
+
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        byte[] second = Arrays.copyOfRange(data, ChunkHashes.CHUNK_SIZE, ChunkHashes.CHUNK_SIZE * 2);
+        assertEquals(Base64.getEncoder().encodeToString(sha256.digest(second)),
+                     hashes.digest(ChunkHashes.CHUNK_SIZE, ChunkHashes.CHUNK_SIZE * 2L - 1));
+        byte[] last = Arrays.copyOfRange(data, ChunkHashes.CHUNK_SIZE * 3, SIZE);
+        assertEquals(Base64.getEncoder().encodeToString(sha256.digest(last)),
+                     hashes.digest(ChunkHashes.CHUNK_SIZE * 3L, SIZE - 1));
+
+        assertNull(hashes.digest(0, 2047));
+        assertNull(hashes.digest(1, ChunkHashes.CHUNK_SIZE));
+        assertNull(hashes.digest(0, ChunkHashes.CHUNK_SIZE * 2L - 1));
+    }
+
+    @Test
+    @DisplayName("the root is the hash of each pair up to one, an odd one out going up as it is")
+    void root() throws Exception {
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        byte[] a = sha256.digest(new byte[] {1});
+        byte[] b = sha256.digest(new byte[] {2});
+        byte[] c = sha256.digest(new byte[] {3});
+        sha256.update(a);
+        sha256.update(b);
+        byte[] ab = sha256.digest();
+        sha256.update(ab);
+        sha256.update(c);
+        assertArrayEquals(sha256.digest(), ChunkHashes.root(new byte[][] {a, b, c}));
+        assertArrayEquals(a, ChunkHashes.root(new byte[][] {a}));
+    }
+}
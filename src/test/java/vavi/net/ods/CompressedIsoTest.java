@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import vavi.net.ods.OnlineDisk.CompressedImage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * An iso compressed a block at a time, read as the iso.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class CompressedIsoTest {
+
+    static final int BLOCK_SIZE = 2048;
+
+    /** nine and a half blocks, each repeating sixteen bytes of its own */
+    static final byte[] iso = new byte[9 * BLOCK_SIZE + BLOCK_SIZE / 2];
+
+    static {
+        for (int i = 0; i < iso.length; i++) {
+            iso[i] = (byte) (i / BLOCK_SIZE * 17 + i % 16);
+        }
+    }
+
+    /** @return the block as lz4: its first sixteen bytes, a match repeating them, five more literals */
+    static byte[] lz4(byte[] block) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int literals = 16;
+        int match = block.length - literals - 5;
+        out.write(15 << 4 | 15);
+        out.write(literals - 15);
+        out.write(block, 0, literals);
+        out.write(16);
+        out.write(0);
+        for (int n = match - Lz4.MIN_MATCH - 15; ; n -= 255) {
+            out.write(Math.min(n, 255));
+            if (n < 255) {
+                break;
+            }
+        }
+        out.write(5 << 4);
+        out.write(block, block.length - 5, 5);
+        return out.toByteArray();
+    }
+
+    static byte[] deflate(byte[] block) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        deflater.setInput(block);
+        deflater.finish();
+        byte[] buffer = new byte[block.length * 2];
+        int n = deflater.deflate(buffer);
+        deflater.end();
+        return Arrays.copyOf(buffer, n);
+    }
+
+    /** @return the iso above compressed, every third block stored as it is, offsets shifted by align */
+    static Path compress(Path dir, CompressedIso.Format format, int align) throws IOException {
+        int blocks = (iso.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int[] index = new int[blocks + 1];
+        long start = CompressedIso.HEADER_SIZE + index.length * 4L;
+        int padding = (int) (((start + (1 << align) - 1) >> align << align) - start);
+        data.write(new byte[padding], 0, padding);
+        for (int b = 0; b < blocks; b++) {
+            byte[] block = Arrays.copyOfRange(iso, b * BLOCK_SIZE, Math.min((b + 1) * BLOCK_SIZE, iso.length));
+            boolean plain = b % 3 == 2;
+            index[b] = (int) ((start + data.size()) >> align) | (plain ? CompressedIso.PLAIN : 0);
+            byte[] stored = plain ? block : format == CompressedIso.Format.CSO ? deflate(block) : lz4(block);
+            data.write(stored, 0, stored.length);
+            int pad = (int) (((data.size() + (1 << align) - 1) >> align << align) - data.size());
+            data.write(new byte[pad], 0, pad);
+        }
+        index[blocks] = (int) ((start + data.size()) >> align);
+
+        ByteBuffer header = ByteBuffer.allocate((int) start).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(format.magic.getBytes(StandardCharsets.US_ASCII));
+        header.putInt(CompressedIso.HEADER_SIZE);
+        header.putLong(iso.length);
+        header.putInt(BLOCK_SIZE);
+        header.put((byte) 1);
+        header.put((byte) align);
+        header.putShort((short) 0);
+        for (int offset : index) {
+            header.putInt(offset);
+        }
+
+        Path path = dir.resolve("test." + format.name().toLowerCase());
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.write(header.array(), 0, header.capacity());
+        file.write(data.toByteArray(), 0, data.size());
+        Files.write(path, file.toByteArray());
+        return path;
+    }
+
+    @ParameterizedTest
+    @EnumSource(CompressedIso.Format.class)
+    @DisplayName("ranges read the iso, across blocks and to its end")
+    void ranges(CompressedIso.Format format, @TempDir Path dir) throws Exception {
+        Path path = compress(dir, format, format == CompressedIso.Format.ZSO ? 2 : 0);
+        try (CompressedImage disk = new CompressedImage(path, format)) {
+            assertEquals(iso.length, disk.size());
+            assertFalse(disk.zeroCopy());
+
+            assertArrayEquals(Arrays.copyOfRange(iso, 0, 100), disk.read(0, 99));
+            assertArrayEquals(Arrays.copyOfRange(iso, 2000, 9000), disk.read(2000, 8999));
+            assertArrayEquals(Arrays.copyOfRange(iso, iso.length - 10, iso.length), disk.read(iso.length - 10, iso.length - 1));
+            assertArrayEquals(iso, disk.read(0, 0));
+        }
+    }
+
+    @Test
+    @DisplayName("a file of another format is not read as one")
+    void magic(@TempDir Path dir) throws Exception {
+        Path path = compress(dir, CompressedIso.Format.CSO, 0);
+        try (CompressedImage disk = new CompressedImage(path, CompressedIso.Format.ZSO)) {
+            assertThrows(IOException.class, disk::size);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(CompressedIso.Format.class)
+    @DisplayName("an index going backwards or past what a block can be is told on open")
+    void index(CompressedIso.Format format, @TempDir Path dir) throws Exception {
+        Path path = compress(dir, format, 0);
+        byte[] file = Files.readAllBytes(path);
+        ByteBuffer index = ByteBuffer.wrap(file).order(ByteOrder.LITTLE_ENDIAN);
+        int second = CompressedIso.HEADER_SIZE + 4;
+        int offset = index.getInt(second);
+
+        index.putInt(second, offset - 4096); // before the first block
+        Files.write(path, file);
+        try (CompressedImage disk = new CompressedImage(path, format)) {
+            assertThrows(IOException.class, disk::size);
+        }
+
+        index.putInt(second, 0x7fff0000); // the first block near 2 GB long
+        Files.write(path, file);
+        try (CompressedImage disk = new CompressedImage(path, format)) {
+            assertThrows(IOException.class, disk::size);
+        }
+    }
+
+    @Test
+    @DisplayName("a broken lz4 block is an error, not garbage")
+    void broken() {
+        byte[] block = lz4(Arrays.copyOf(iso, BLOCK_SIZE));
+        assertThrows(IOException.class, () -> Lz4.decompress(Arrays.copyOf(block, 10), new byte[BLOCK_SIZE]));
+        block[18] = 0x7f; // an offset before the start
+        assertThrows(IOException.class, () -> Lz4.decompress(block, new byte[BLOCK_SIZE]));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * What a client's conditional headers say about a disc as it is now.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class ConditionsTest {
+
+    static final String ETAG = "\"800-18f3a-5c\"";
+
+    /** Sun, 06 Nov 1994 08:49:37 GMT and a little */
+    static final long MODIFIED = 784111777_123L;
+
+    @Test
+    @DisplayName("a date is an http date, and one is read back to the second")
+    void date() {
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", Conditions.date(MODIFIED));
+        assertEquals(784111777_000L, Conditions.date("Sun, 06 Nov 1994 08:49:37 GMT"));
+        assertEquals(784111777_000L, Conditions.date("Sun, 6 Nov 1994 08:49:37 GMT"));
+        assertEquals(-1, Conditions.date("yesterday"));
+        assertEquals(-1, Conditions.date((String) null));
+    }
+
+    @Test
+    @DisplayName("a client holding the tag has the disc as it is, any of the tags it holds, weak or not")
+    void ifNoneMatch() {
+        assertTrue(Conditions.notModified(ETAG, null, ETAG, MODIFIED));
+        assertTrue(Conditions.notModified("\"x\", W/" + ETAG, null, ETAG, MODIFIED));
+        assertTrue(Conditions.notModified("*", null, ETAG, MODIFIED));
+        assertFalse(Conditions.notModified("\"x\"", null, ETAG, MODIFIED));
+        // the tag says no, whatever the date says
+        assertFalse(Conditions.notModified("\"x\"", "Sun, 06 Nov 1994 08:49:37 GMT", ETAG, MODIFIED));
+    }
+
+    @Test
+    @DisplayName("a client holding the disc since it was modified has it as it is")
+    void ifModifiedSince() {
+        assertTrue(Conditions.notModified(null, "Sun, 06 Nov 1994 08:49:37 GMT", ETAG, MODIFIED));
+        assertTrue(Conditions.notModified(null, "Mon, 07 Nov 1994 08:49:37 GMT", ETAG, MODIFIED));
+        assertFalse(Conditions.notModified(null, "Sun, 06 Nov 1994 08:49:36 GMT", ETAG, MODIFIED));
+        assertFalse(Conditions.notModified(null, "garbage", ETAG, MODIFIED));
+        assertFalse(Conditions.notModified(null, null, ETAG, MODIFIED));
+    }
+
+    @Test
+    @DisplayName("a range is served only of the disc the client read the start of")
+    void ifRange() {
+        assertTrue(Conditions.rangeApplies(null, ETAG, MODIFIED));
+        assertTrue(Conditions.rangeApplies(ETAG, ETAG, MODIFIED));
+        assertTrue(Conditions.rangeApplies("Sun, 06 Nov 1994 08:49:37 GMT", ETAG, MODIFIED));
+
+        // swapped
+        assertFalse(Conditions.rangeApplies("\"800-18f3a-5d\"", ETAG, MODIFIED));
+        assertFalse(Conditions.rangeApplies("Sun, 06 Nov 1994 08:49:38 GMT", ETAG, MODIFIED));
+        // a weak tag is not enough to put two reads together
+        assertFalse(Conditions.rangeApplies("W/" + ETAG, ETAG, MODIFIED));
+        assertFalse(Conditions.rangeApplies("garbage", ETAG, MODIFIED));
+    }
+}
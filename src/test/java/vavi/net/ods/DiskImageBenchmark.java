@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vavi.net.ods.OnlineDisk.DiskImage;
+
+
+/**
+ * Reading ranges of an image, the way the servlet does for a range asked for: into
+ * the heap, and straight to a channel.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DiskImageBenchmark {
+
+    /** how big the image is, bigger than any range by far */
+    static final long SIZE = 256L * 1024 * 1024;
+
+    /** how many bytes a range is: a sector, what a mac asks for mostly, a chunk */
+    @Param({"2048", "65536", "1048576"})
+    int length;
+
+    /** where the ranges are: all at the start, one after another, or anywhere */
+    @Param({"start", "sequential", "random"})
+    String offset;
+
+    /** whether reads come out of memory mapped segments */
+    @Param({"false", "true"})
+    boolean mapped;
+
+    Path directory;
+
+    DiskImage disk;
+
+    /** where the next sequential range starts */
+    long next;
+
+    /** takes what it is written and drops it */
+    final WritableByteChannel sink = new WritableByteChannel() {
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    /**
+     * @return an image of the given size carrying the label, the rest of it random
+     *         but the same for every run
+     */
+    static Path image(Path directory, String label, long size) throws IOException {
+        Path image = directory.resolve(label + ".iso");
+        try (FileChannel channel = FileChannel.open(image, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ByteBuffer head = ByteBuffer.wrap(Iso9660.of(label));
+            while (head.hasRemaining()) {
+                channel.write(head);
+            }
+            Random random = new Random(25);
+            byte[] chunk = new byte[1024 * 1024];
+            for (long position = channel.position(); position < size; position += chunk.length) {
+                random.nextBytes(chunk);
+                ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, (int) Math.min(chunk.length, size - position));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+        return image;
+    }
+
+    /** Removes the directory and what is in it. */
+    static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("ods-bench");
+        disk = new DiskImage(image(directory, "BENCH", SIZE), mapped);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        disk.close();
+        delete(directory);
+    }
+
+    /** @return where the next range starts */
+    long start() {
+        switch (offset) {
+        case "start":
+            return 0;
+        case "sequential":
+            long start = next;
+            next = start + length >= SIZE ? 0 : start + length;
+            return start;
+        default:
+            return ThreadLocalRandom.current().nextLong(SIZE / length) * length;
+        }
+    }
+
+    @Benchmark
+    public byte[] read() throws IOException {
+        long start = start();
+        return disk.read(start, start + length - 1);
+    }
+
+    @Benchmark
+    public void transferTo() throws IOException {
+        long start = start();
+        disk.transferTo(start, start + length - 1, sink);
+    }
+}
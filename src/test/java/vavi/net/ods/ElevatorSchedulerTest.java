@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * The order a drive is read in when several reads wait for it.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+@Timeout(30)
+class ElevatorSchedulerTest {
+
+    /** what a drive holds at a position, something to tell one position from another by */
+    static byte[] bytes(long position, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ((position + i) * 31);
+        }
+        return data;
+    }
+
+    @Test
+    @DisplayName("reads waiting are read from the head on, the touching ones as one, and then from the start")
+    void elevator() throws Exception {
+        CountDownLatch busy = new CountDownLatch(1);
+        List<long[]> reads = Collections.synchronizedList(new ArrayList<>());
+        ElevatorScheduler scheduler = new ElevatorScheduler("test", (position, length) -> {
+            reads.add(new long[] {position, length});
+            if (reads.size() == 1) {
+                try {
+                    busy.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            return bytes(position, length);
+        });
+        try {
+            // the drive is busy with this one while the others come in
+            CompletableFuture<byte[]> first = read(scheduler, 1000, 100);
+            while (reads.isEmpty()) {
+                Thread.sleep(10);
+            }
+            List<CompletableFuture<byte[]>> others = new ArrayList<>();
+            long[][] ranges = {{5000, 100}, {100, 100}, {3000, 100}, {3100, 100}};
+            for (long[] range : ranges) {
+                others.add(read(scheduler, range[0], (int) range[1]));
+            }
+            while (scheduler.pending() < ranges.length) {
+                Thread.sleep(10);
+            }
+            busy.countDown();
+
+            assertArrayEquals(bytes(1000, 100), first.get());
+            for (int i = 0; i < ranges.length; i++) {
+                assertArrayEquals(bytes(ranges[i][0], (int) ranges[i][1]), others.get(i).get());
+            }
+            assertEquals(4, reads.size());
+            assertArrayEquals(new long[] {3000, 200}, reads.get(1));
+            assertArrayEquals(new long[] {5000, 100}, reads.get(2));
+            assertArrayEquals(new long[] {100, 100}, reads.get(3));
+        } finally {
+            scheduler.close();
+        }
+    }
+
+    @Test
+    @DisplayName("a read that fails fails for every read it was made of")
+    void failure() throws Exception {
+        ElevatorScheduler scheduler = new ElevatorScheduler("test", (position, length) -> {
+            throw new IOException("no disc");
+        });
+        try {
+            assertThrows(IOException.class, () -> scheduler.read(0, 10));
+        } finally {
+            scheduler.close();
+        }
+    }
+
+    static CompletableFuture<byte[]> read(ElevatorScheduler scheduler, long position, int length) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return scheduler.read(position, length);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, r -> new Thread(r).start());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * A drive is read once for each block, and not at all once its disc is copied.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+@Timeout(60)
+class FillCacheTest {
+
+    /** three blocks and a bit, the last one short */
+    static final int SIZE = 3 * FillCache.BLOCK_SIZE + 1000;
+
+    byte[] disc = new byte[SIZE];
+
+    AtomicInteger reads = new AtomicInteger();
+
+    {
+        for (int i = 0; i < SIZE; i++) {
+            disc[i] = (byte) (i * 7);
+        }
+    }
+
+    /** a drive holding the disc above, counting how often it is read */
+    byte[] drive(long position, int length) {
+        reads.incrementAndGet();
+        return Arrays.copyOfRange(disc, (int) position, (int) position + length);
+    }
+
+    @Test
+    @DisplayName("what was read once is read out of the copy after that")
+    void filled(@TempDir Path dir) throws Exception {
+        try (FillCache cache = new FillCache(dir, "sr0", SIZE, this::drive)) {
+            assertArrayEquals(Arrays.copyOfRange(disc, 100, 200), cache.read(100, 100));
+            assertEquals(1, reads.get());
+            // the rest of the same block
+            assertArrayEquals(Arrays.copyOfRange(disc, 5000, 9000), cache.read(5000, 4000));
+            assertEquals(1, reads.get());
+            // the end of the disc, in a short block
+            assertArrayEquals(Arrays.copyOfRange(disc, SIZE - 2000, SIZE), cache.read(SIZE - 2000, 2000));
+            assertEquals(2, reads.get());
+            // across the block read before and the ones not read yet
+            assertArrayEquals(Arrays.copyOfRange(disc, 60000, SIZE), cache.read(60000, SIZE - 60000));
+            assertEquals(3, reads.get());
+
+            assertTrue(cache.complete());
+            assertArrayEquals(disc, cache.read(0, SIZE));
+            assertEquals(3, reads.get());
+        }
+    }
+
+    @Test
+    @DisplayName("a disc nobody reads is ripped to the end")
+    void ripped(@TempDir Path dir) throws Exception {
+        try (FillCache cache = new FillCache(dir, "sr0", SIZE, this::drive)) {
+            assertFalse(cache.complete());
+            cache.rip();
+            while (!cache.complete()) {
+                Thread.sleep(100);
+            }
+            int read = reads.get();
+
+            assertArrayEquals(disc, cache.read(0, SIZE));
+            assertEquals(read, reads.get());
+        }
+    }
+
+    @Test
+    @DisplayName("the copy is gone with the disc")
+    void discarded(@TempDir Path dir) throws Exception {
+        FillCache cache = new FillCache(dir, "sr0", SIZE, this::drive);
+        cache.read(0, 10);
+        cache.close();
+
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * The least of an HFS+ volume its name is read from: a volume header, and a catalog
+ * of a header node and one leaf holding the root folder. Written on its own, in an
+ * Apple partition map or a GPT, or as classic HFS with the name in the master
+ * directory block.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+final class Hfs {
+
+    static final int BLOCK_SIZE = 4096;
+
+    /** how many blocks the volume is */
+    static final int BLOCKS = 32;
+
+    static final int SIZE = BLOCK_SIZE * BLOCKS;
+
+    /** where the catalog starts, in blocks */
+    static final int CATALOG = 4;
+
+    private Hfs() {
+    }
+
+    /** @return an HFS+ volume of the name */
+    static byte[] of(String name) {
+        return on(new byte[SIZE], 0, name);
+    }
+
+    /** @return the image with an HFS+ volume of the name written on it from start on */
+    static byte[] on(byte[] image, int start, String name) {
+        ByteBuffer disc = ByteBuffer.wrap(image);
+
+        int header = start + 1024;
+        disc.putShort(header, (short) 0x482b);
+        disc.putShort(header + 2, (short) 4);
+        disc.putInt(header + 40, BLOCK_SIZE);
+        disc.putInt(header + 44, BLOCKS);
+        disc.putLong(header + 272, 2L * BLOCK_SIZE); // the catalog, two nodes long
+        disc.putInt(header + 272 + 12, 2);
+        disc.putInt(header + 272 + 16, CATALOG);
+        disc.putInt(header + 272 + 20, 2);
+
+        int headerNode = start + CATALOG * BLOCK_SIZE;
+        disc.put(headerNode + 8, (byte) 1);
+        disc.putShort(headerNode + 10, (short) 3);
+        disc.putInt(headerNode + 14 + 10, 1); // the first leaf
+        disc.putShort(headerNode + 14 + 18, (short) BLOCK_SIZE); // the node size
+
+        int leaf = headerNode + BLOCK_SIZE;
+        disc.put(leaf + 8, (byte) -1);
+        disc.put(leaf + 9, (byte) 1);
+        disc.putShort(leaf + 10, (short) 1);
+        byte[] chars = name.getBytes(StandardCharsets.UTF_16BE);
+        disc.putShort(leaf + 14, (short) (6 + chars.length));
+        disc.putInt(leaf + 14 + 2, 1); // the parent of the root folder
+        disc.putShort(leaf + 14 + 6, (short) (chars.length / 2));
+        disc.put(leaf + 14 + 8, chars);
+        disc.putShort(leaf + BLOCK_SIZE - 2, (short) 14); // where the record is
+
+        return image;
+    }
+
+    /** @return a disc of an Apple partition map and one HFS+ partition from start on, in 512 byte blocks */
+    static byte[] apm(byte[] image, int start, String name) {
+        ByteBuffer disc = ByteBuffer.wrap(image);
+        disc.putShort(0, (short) 0x4552); // "ER"
+        disc.putShort(2, (short) 512);
+        for (int i = 0; i < 2; i++) {
+            int entry = 512 * (i + 1);
+            disc.putShort(entry, (short) 0x504d); // "PM"
+            disc.putInt(entry + 4, 2);
+            if (i == 0) {
+                disc.putInt(entry + 8, 1);
+                disc.putInt(entry + 12, 63);
+                disc.put(entry + 48, "Apple_partition_map".getBytes(StandardCharsets.US_ASCII));
+            } else {
+                disc.putInt(entry + 8, start / 512);
+                disc.putInt(entry + 12, SIZE / 512);
+                disc.put(entry + 48, "Apple_HFS".getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        return on(image, start, name);
+    }
+
+    /** @return a disc of a GPT and one HFS+ partition from start on */
+    static byte[] gpt(byte[] image, int start, String name) {
+        ByteBuffer disc = ByteBuffer.wrap(image);
+        disc.put(512, "EFI PART".getBytes(StandardCharsets.US_ASCII));
+        disc.putLong(512 + 72, Long.reverseBytes(2)); // the entries, from lba 2 on
+        disc.putInt(512 + 80, Integer.reverseBytes(4));
+        disc.putInt(512 + 84, Integer.reverseBytes(128));
+        int entry = 1024 + 128; // the second entry
+        disc.put(entry, HfsVolume.HFS_PLUS_GUID);
+        disc.putLong(entry + 32, Long.reverseBytes(start / 512));
+        return on(image, start, name);
+    }
+
+    /** @return a classic HFS volume, its name in the master directory block */
+    static byte[] hfs(String name) {
+        byte[] image = new byte[SIZE];
+        ByteBuffer disc = ByteBuffer.wrap(image);
+        disc.putShort(1024, (short) 0x4244); // "BD"
+        disc.putShort(1024 + 18, (short) 60); // allocation blocks
+        disc.putInt(1024 + 20, 2048); // of this size
+        disc.putShort(1024 + 28, (short) 4); // from this 512 byte block on
+        byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+        disc.put(1024 + 36, (byte) bytes.length);
+        disc.put(1024 + 37, bytes);
+        return image;
+    }
+}
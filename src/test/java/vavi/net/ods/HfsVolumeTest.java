@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+/**
+ * The name of an HFS+ volume, read out of its catalog without cdrtools.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class HfsVolumeTest {
+
+    /** "Caf\u00e9" as HFS+ keeps it, decomposed */
+    static final String DECOMPOSED = "Cafe\u0301 Disk";
+
+    static Volume probe(Path dir, byte[] image) throws Exception {
+        Path path = dir.resolve("image.dmg");
+        Files.write(path, image);
+        return Volume.probe(path);
+    }
+
+    @Test
+    @DisplayName("a volume on its own is named after its root folder, composed")
+    void bare(@TempDir Path dir) throws Exception {
+        Volume volume = probe(dir, Hfs.of(DECOMPOSED));
+
+        assertEquals("Caf\u00e9 Disk", volume.label());
+        assertEquals(Hfs.BLOCK_SIZE, volume.blockSize());
+        assertEquals(Hfs.BLOCKS, volume.blocks());
+    }
+
+    @Test
+    @DisplayName("a volume in an Apple partition map is found there")
+    void apm(@TempDir Path dir) throws Exception {
+        int start = 32 * 1024;
+        Volume volume = probe(dir, Hfs.apm(new byte[start + Hfs.SIZE], start, "Mapped"));
+
+        assertEquals("Mapped", volume.label());
+        assertEquals(start + Hfs.SIZE, volume.size());
+    }
+
+    @Test
+    @DisplayName("a volume in a GPT is found there")
+    void gpt(@TempDir Path dir) throws Exception {
+        int start = 40 * 512;
+        Volume volume = probe(dir, Hfs.gpt(new byte[start + Hfs.SIZE], start, "Guid"));
+
+        assertEquals("Guid", volume.label());
+        assertEquals(start + Hfs.SIZE, volume.size());
+    }
+
+    @Test
+    @DisplayName("classic HFS has the name in the master directory block")
+    void hfs(@TempDir Path dir) throws Exception {
+        Volume volume = probe(dir, Hfs.hfs("Old Disk"));
+
+        assertEquals("Old Disk", volume.label());
+    }
+
+    @Test
+    @DisplayName("a hybrid cd is labelled as a mac sees it, and is as big as all of it")
+    void hybrid(@TempDir Path dir) throws Exception {
+        byte[] iso = Iso9660.of("HYBRID");
+        byte[] disc = new byte[iso.length + Hfs.SIZE];
+        System.arraycopy(iso, 0, disc, 0, iso.length);
+
+        Volume volume = probe(dir, Hfs.apm(disc, iso.length, "Hybrid Disc"));
+
+        assertEquals("Hybrid Disc", volume.label());
+        assertEquals(disc.length, volume.size());
+    }
+
+    @Test
+    @DisplayName("a partition map counting fewer than no partitions is none")
+    void negativeCount(@TempDir Path dir) throws Exception {
+        byte[] disc = Hfs.apm(new byte[64 * 1024 + Hfs.SIZE], 64 * 1024, "Broken");
+        ByteBuffer.wrap(disc).putInt(512 + 4, -1);
+
+        assertNull(probe(dir, disc));
+    }
+
+    @Test
+    @DisplayName("a GPT whose entries are said to be gigabytes big is none")
+    void hugeEntries(@TempDir Path dir) throws Exception {
+        byte[] disc = Hfs.gpt(new byte[40 * 512 + Hfs.SIZE], 40 * 512, "Broken");
+        ByteBuffer.wrap(disc).putInt(512 + 84, Integer.reverseBytes(0x7fff_ffff));
+
+        assertNull(probe(dir, disc));
+    }
+
+    @Test
+    @DisplayName("an HFS wrapper pointing at itself is taken as classic HFS, not gone round for ever")
+    void selfWrapped(@TempDir Path dir) throws Exception {
+        byte[] disc = Hfs.hfs("Wrapper");
+        ByteBuffer wrapper = ByteBuffer.wrap(disc);
+        wrapper.putShort(1024 + 28, (short) 0); // no allocation blocks before
+        wrapper.putShort(1024 + 124, (short) HfsVolume.HFS_PLUS); // says it wraps HFS+
+        wrapper.putShort(1024 + 126, (short) 0); // at block 0, itself
+
+        Volume volume = probe(dir, disc);
+        assertEquals("Wrapper", volume.label());
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * How long things took, the way prometheus takes it.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class HistogramTest {
+
+    @Test
+    @DisplayName("each bucket counts what took up to its bound, those before it included")
+    void cumulative() {
+        Histogram histogram = new Histogram(new double[] {0.001, 0.1});
+        histogram.observe(TimeUnit.MICROSECONDS.toNanos(500));
+        histogram.observe(TimeUnit.MILLISECONDS.toNanos(1)); // on the bound is in
+        histogram.observe(TimeUnit.MILLISECONDS.toNanos(50));
+        histogram.observe(TimeUnit.SECONDS.toNanos(2));
+
+        StringBuilder out = new StringBuilder();
+        histogram.write(out, "t_seconds", "source=\"image\"");
+        String text = out.toString();
+
+        assertEquals(4, histogram.count());
+        assertTrue(text.contains("t_seconds_bucket{source=\"image\",le=\"0.001\"} 2\n"), text);
+        assertTrue(text.contains("t_seconds_bucket{source=\"image\",le=\"0.1\"} 3\n"), text);
+        assertTrue(text.contains("t_seconds_bucket{source=\"image\",le=\"+Inf\"} 4\n"), text);
+        assertTrue(text.contains("t_seconds_sum{source=\"image\"} 2.0515\n"), text);
+        assertTrue(text.contains("t_seconds_count{source=\"image\"} 4\n"), text);
+    }
+
+    @Test
+    @DisplayName("a histogram without labels has none, not empty braces")
+    void unlabelled() {
+        Histogram histogram = new Histogram(Histogram.REFRESHES);
+        histogram.observe(1);
+
+        StringBuilder out = new StringBuilder();
+        histogram.write(out, "r_seconds", "");
+        String text = out.toString();
+
+        assertTrue(text.contains("r_seconds_bucket{le=\"0.01\"} 1\n"), text);
+        assertTrue(text.contains("r_seconds_count 1\n"), text);
+    }
+}
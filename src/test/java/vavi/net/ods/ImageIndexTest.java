@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+/**
+ * What is known of the images of a directory, across starts of the server.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class ImageIndexTest {
+
+    Tools tools = Tools.getInstance();
+
+    @Test
+    @DisplayName("an image as it was is not read again, on the next start either")
+    void trusted(@TempDir Path dir) throws Exception {
+        Path iso = dir.resolve("one.iso");
+        Files.write(iso, Iso9660.of("FIRST"));
+        FileTime modified = Files.getLastModifiedTime(iso);
+
+        ImageIndex index = new ImageIndex(dir, tools).load();
+        try (OnlineDisk disk = index.open(iso, false)) {
+            assertEquals("FIRST", disk.label());
+        }
+        index.save();
+
+        // the same size and time, another label: only a read would tell
+        Files.write(iso, Iso9660.of("SECOND"));
+        Files.setLastModifiedTime(iso, modified);
+
+        ImageIndex restarted = new ImageIndex(dir, tools).load();
+        assertEquals(1, restarted.size());
+        try (OnlineDisk disk = restarted.open(iso, false)) {
+            assertEquals("FIRST", disk.label());
+            assertEquals(Files.size(iso), disk.size());
+        }
+    }
+
+    @Test
+    @DisplayName("an image that changed is read again")
+    void changed(@TempDir Path dir) throws Exception {
+        Path iso = dir.resolve("one.iso");
+        Files.write(iso, Iso9660.of("FIRST"));
+
+        ImageIndex index = new ImageIndex(dir, tools).load();
+        index.open(iso, false).close();
+
+        byte[] bigger = new byte[Iso9660.SECTORS * Iso9660.SECTOR_SIZE * 2];
+        byte[] second = Iso9660.of("SECOND");
+        System.arraycopy(second, 0, bigger, 0, second.length);
+        Files.write(iso, bigger);
+
+        assertNull(index.get(iso, Files.readAttributes(iso, BasicFileAttributes.class)));
+        try (OnlineDisk disk = index.open(iso, false)) {
+            assertEquals("SECOND", disk.label());
+            assertEquals(bigger.length, disk.size());
+        }
+    }
+
+    @Test
+    @DisplayName("a library is indexed on several threads, hashes and all, and once only")
+    void refresh(@TempDir Path dir) throws Exception {
+        for (int i = 0; i < 5; i++) {
+            Files.write(dir.resolve("disc" + i + ".iso"), Iso9660.of("DISC" + i));
+        }
+
+        ImageIndex index = new ImageIndex(dir, tools).load();
+        assertEquals(5, index.refresh(dir, 3, true));
+        index.save();
+
+        ImageIndex.main(new String[] {"-j", "2", dir.toString()});
+        ImageIndex restarted = new ImageIndex(dir, tools).load();
+        assertEquals(0, restarted.refresh(dir, 2, true));
+
+        Path disc = dir.resolve("disc3.iso");
+        ImageIndex.Entry entry = restarted.get(disc, Files.readAttributes(disc, BasicFileAttributes.class));
+        assertNotNull(entry);
+        assertEquals("DISC3", entry.label());
+        assertEquals(Iso9660.SECTOR_SIZE, entry.blockSize());
+        assertEquals(Iso9660.SECTORS, entry.blocks());
+        assertEquals(ImageIndex.PLAIN, entry.format());
+        assertEquals(ImageIndex.hash(disc), entry.hash());
+        ChunkHashes hashes = ChunkHashes.load(disc);
+        assertNotNull(hashes, "hashed in the same pass");
+        assertArrayEquals(ChunkHashesTest.build(disc).root(), hashes.root());
+
+        // indexed before its chunks were hashed: read again for them
+        Files.delete(ChunkHashes.file(disc));
+        assertEquals(1, restarted.refresh(dir, 2, true));
+        assertNotNull(ChunkHashes.load(disc));
+
+        Files.delete(disc);
+        restarted.refresh(dir, 2, true);
+        assertEquals(4, restarted.size());
+    }
+
+    @Test
+    @DisplayName("a label of any characters is kept as it is")
+    void escaped(@TempDir Path dir) throws Exception {
+        Path odd = Files.write(dir.resolve("odd.iso"), new byte[1]);
+        BasicFileAttributes attributes = Files.readAttributes(odd, BasicFileAttributes.class);
+        String label = "tab\there\nand \\ there";
+
+        ImageIndex index = new ImageIndex(dir, tools).load();
+        index.put(new ImageIndex.Entry("odd.iso", attributes.size(), attributes.lastModifiedTime().toMillis(),
+                ImageIndex.fileKey(attributes), label, 1, 0, 0, ImageIndex.PLAIN, null));
+        index.save();
+
+        assertEquals(label, new ImageIndex(dir, tools).load().get(odd, attributes).label());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * The files of a directory that changed, told of as they change.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+@Timeout(60)
+class ImageWatcherTest {
+
+    BlockingQueue<Set<Path>> changes = new LinkedBlockingQueue<>();
+
+    BlockingQueue<Boolean> reconciles = new LinkedBlockingQueue<>();
+
+    ImageWatcher.Listener listener = new ImageWatcher.Listener() {
+        @Override
+        public void changed(Set<Path> files) {
+            changes.add(files);
+        }
+
+        @Override
+        public void reconcile() {
+            reconciles.add(true);
+        }
+    };
+
+    @Test
+    @DisplayName("a file added, written over and over, is told of once")
+    void added(@TempDir Path dir) throws Exception {
+        try (ImageWatcher watcher = new ImageWatcher(dir, listener, 0)) {
+            Path iso = dir.resolve("new.iso");
+            for (int i = 0; i < 5; i++) {
+                Files.write(iso, Iso9660.of("NEW" + i));
+            }
+
+            // the polling watch service of some platforms takes its time
+            Set<Path> changed = changes.poll(30, TimeUnit.SECONDS);
+            assertNotNull(changed);
+            assertEquals(Set.of(iso), changed);
+        }
+    }
+
+    @Test
+    @DisplayName("a file gone is told of")
+    void gone(@TempDir Path dir) throws Exception {
+        Path iso = Files.write(dir.resolve("old.iso"), Iso9660.of("OLD"));
+        try (ImageWatcher watcher = new ImageWatcher(dir, listener, 0)) {
+            Files.delete(iso);
+
+            Set<Path> changed = changes.poll(30, TimeUnit.SECONDS);
+            assertNotNull(changed);
+            assertTrue(changed.contains(iso));
+        }
+    }
+
+    @Test
+    @DisplayName("everything is looked at again every so often")
+    void reconciled(@TempDir Path dir) throws Exception {
+        try (ImageWatcher watcher = new ImageWatcher(dir, listener, 1)) {
+            assertNotNull(reconciles.poll(10, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -75,6 +75,34 @@ final class Iso9660 {
         return image;
     }
 
+    /**
+     * @param volumeLabel the volume id of the primary descriptor
+     * @param jolietLabel the volume id of a Joliet descriptor after it, in UCS-2
+     * @return the image
+     */
+    static byte[] joliet(String volumeLabel, String jolietLabel) {
+        byte[] image = of(volumeLabel);
+
+        int svd = 17 * SECTOR_SIZE;
+        System.arraycopy(image, 16 * SECTOR_SIZE, image, svd, SECTOR_SIZE);
+        image[svd] = 2; // supplementary volume descriptor
+        Arrays.fill(image, svd + 40, svd + 72, (byte) 0);
+        for (int i = 0; i < 16; i++) {
+            char c = i < jolietLabel.length() ? jolietLabel.charAt(i) : ' ';
+            image[svd + 40 + i * 2] = (byte) (c >> 8);
+            image[svd + 40 + i * 2 + 1] = (byte) c;
+        }
+        image[svd + 88] = '%';
+        image[svd + 89] = '/';
+        image[svd + 90] = 'E'; // ucs-2 level 3
+
+        int terminator = 18 * SECTOR_SIZE;
+        image[terminator] = (byte) 255;
+        header(image, terminator);
+
+        return image;
+    }
+
     /** the "CD001" identifier and version every descriptor starts with */
     private static void header(byte[] image, int offset) {
         System.arraycopy("CD001".getBytes(StandardCharsets.US_ASCII), 0, image, offset + 1, 5);
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+/**
+ * The volume descriptors of an iso, read without cdrtools.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class IsoVolumeTest {
+
+    @Test
+    @DisplayName("the primary descriptor gives the label and the geometry")
+    void primary(@TempDir Path dir) throws Exception {
+        Path iso = dir.resolve("image.iso");
+        Files.write(iso, Iso9660.of("ODSLABEL"));
+
+        Volume volume = Volume.probe(iso);
+
+        assertEquals("ODSLABEL", volume.label());
+        assertEquals(Iso9660.SECTOR_SIZE, volume.blockSize());
+        assertEquals(Iso9660.SECTORS, volume.blocks());
+        assertEquals(Files.size(iso), volume.size());
+    }
+
+    @Test
+    @DisplayName("a Joliet descriptor gives the label as it was meant")
+    void joliet(@TempDir Path dir) throws Exception {
+        Path iso = dir.resolve("image.iso");
+        Files.write(iso, Iso9660.joliet("MY_DISC", "My Disc \u00e9t\u00e9"));
+
+        Volume volume = Volume.probe(iso);
+
+        assertEquals("My Disc \u00e9t\u00e9", volume.label());
+        assertEquals(Iso9660.SECTORS, volume.blocks());
+    }
+
+    @Test
+    @DisplayName("anything else is no iso, however long or short")
+    void other(@TempDir Path dir) throws Exception {
+        Path small = dir.resolve("small.iso");
+        Files.write(small, "not an iso at all".getBytes(StandardCharsets.US_ASCII));
+        assertNull(Volume.probe(small));
+
+        Path big = dir.resolve("big.iso");
+        byte[] zeros = new byte[Iso9660.SECTORS * Iso9660.SECTOR_SIZE];
+        Files.write(big, zeros);
+        assertNull(Volume.probe(big));
+    }
+
+    @Test
+    @DisplayName("a blank volume id is no label")
+    void blank(@TempDir Path dir) throws Exception {
+        byte[] image = Iso9660.of("");
+        Arrays.fill(image, 16 * Iso9660.SECTOR_SIZE + 40, 16 * Iso9660.SECTOR_SIZE + 72, (byte) ' ');
+        Path iso = dir.resolve("image.iso");
+        Files.write(iso, image);
+
+        assertNull(Volume.probe(iso).label());
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import vavi.net.ods.OnlineDisk.DiskImage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+
+/**
+ * Reads out of an image mapped in segments, with segments small enough for a test
+ * image to have many of them.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class MappedSegmentsTest {
+
+    /** a sector and a half, so that sectors straddle segments */
+    static final int SEGMENT_SIZE = 3 * Iso9660.SECTOR_SIZE / 2;
+
+    @Test
+    @DisplayName("a range across segments is read out of all of them")
+    void acrossSegments(@TempDir Path dir) throws Exception {
+        byte[] image = Iso9660.of("MAPPED");
+        Path iso = dir.resolve("mapped.iso");
+        Files.write(iso, image);
+
+        try (DiskChannel channel = new DiskChannel(iso)) {
+            MappedSegments segments = new MappedSegments(channel, image.length, SEGMENT_SIZE);
+
+            for (int start : new int[] {0, SEGMENT_SIZE - 1, SEGMENT_SIZE, 16 * Iso9660.SECTOR_SIZE, image.length - 5000}) {
+                ByteBuffer buffer = ByteBuffer.allocate(5000);
+                segments.read(buffer, start);
+                assertArrayEquals(Arrays.copyOfRange(image, start, start + 5000), buffer.array());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("a range handed on is handed on out of every segment it crosses")
+    void transferAcrossSegments(@TempDir Path dir) throws Exception {
+        byte[] image = Iso9660.of("MAPPED");
+        Path iso = dir.resolve("mapped.iso");
+        Files.write(iso, image);
+
+        try (DiskChannel channel = new DiskChannel(iso)) {
+            MappedSegments segments = new MappedSegments(channel, image.length, SEGMENT_SIZE);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            segments.transferTo(100, image.length - 100, Channels.newChannel(out));
+
+            assertArrayEquals(Arrays.copyOfRange(image, 100, image.length), out.toByteArray());
+        }
+    }
+
+    @Test
+    @DisplayName("a segment let go of for being idle is mapped again on the next read")
+    void remapped(@TempDir Path dir) throws Exception {
+        byte[] image = Iso9660.of("MAPPED");
+        Path iso = dir.resolve("mapped.iso");
+        Files.write(iso, image);
+
+        try (DiskChannel channel = new DiskChannel(iso)) {
+            MappedSegments segments = new MappedSegments(channel, image.length, SEGMENT_SIZE);
+            ByteBuffer buffer = ByteBuffer.allocate(100);
+            segments.read(buffer, 0);
+
+            segments.sweep(System.nanoTime() + 2 * MappedSegments.IDLE);
+
+            buffer.clear();
+            segments.read(buffer, 0);
+            assertArrayEquals(Arrays.copyOfRange(image, 0, 100), buffer.array());
+        }
+    }
+
+    @Test
+    @DisplayName("a mapped image reads what an image read the usual way reads")
+    void mappedImage(@TempDir Path dir) throws Exception {
+        byte[] image = Iso9660.of("MAPPED");
+        Path iso = dir.resolve("mapped.iso");
+        Files.write(iso, image);
+
+        DiskImage disk = new DiskImage(iso, true);
+        try {
+            assertArrayEquals(Arrays.copyOfRange(image, 1000, 9000), disk.read(1000, 8999));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            disk.transferTo(0, image.length - 1, Channels.newChannel(out));
+            assertArrayEquals(image, out.toByteArray());
+        } finally {
+            disk.close();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.prefs.AbstractPreferences;
+
+
+/**
+ * Preferences kept in memory and nowhere else, for a server to be run with settings
+ * of its own rather than with what the user set, and to leave nothing behind.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+final class MemoryPreferences extends AbstractPreferences {
+
+    private final Map<String, String> values = new HashMap<>();
+
+    private final Map<String, MemoryPreferences> children = new HashMap<>();
+
+    MemoryPreferences() {
+        this(null, "");
+    }
+
+    private MemoryPreferences(MemoryPreferences parent, String name) {
+        super(parent, name);
+    }
+
+    @Override
+    protected void putSpi(String key, String value) {
+        values.put(key, value);
+    }
+
+    @Override
+    protected String getSpi(String key) {
+        return values.get(key);
+    }
+
+    @Override
+    protected void removeSpi(String key) {
+        values.remove(key);
+    }
+
+    @Override
+    protected void removeNodeSpi() {
+        values.clear();
+        children.clear();
+    }
+
+    @Override
+    protected String[] keysSpi() {
+        return values.keySet().toArray(String[]::new);
+    }
+
+    @Override
+    protected String[] childrenNamesSpi() {
+        return children.keySet().toArray(String[]::new);
+    }
+
+    @Override
+    protected AbstractPreferences childSpi(String name) {
+        return children.computeIfAbsent(name, n -> new MemoryPreferences(this, n));
+    }
+
+    @Override
+    protected void syncSpi() {
+    }
+
+    @Override
+    protected void flushSpi() {
+    }
+}
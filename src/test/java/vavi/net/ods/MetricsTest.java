@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * What the server did so far, as prometheus scrapes it.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class MetricsTest {
+
+    @Test
+    @DisplayName("requests, bytes and errors are counted per disc and status")
+    void counted() {
+        Metrics metrics = new Metrics(null);
+        for (int status : new int[] {200, 200, 404, 500}) {
+            metrics.started();
+            metrics.finished("disk0", "GET", status, false);
+        }
+        metrics.started();
+        metrics.finished(Metrics.NONE, "HEAD", 404, false);
+        metrics.started();
+        metrics.finished("disk0", "GET", 200, true);
+        metrics.sent("disk0", 2048);
+        metrics.sent("disk0", 512);
+        metrics.started(); // still going
+
+        String text = metrics.scrape();
+
+        assertTrue(text.contains("ods_requests_total{disk=\"disk0\",method=\"GET\",status=\"200\"} 3\n"), text);
+        assertTrue(text.contains("ods_requests_total{disk=\"disk0\",method=\"GET\",status=\"404\"} 1\n"), text);
+        assertTrue(text.contains("ods_requests_total{disk=\"none\",method=\"HEAD\",status=\"404\"} 1\n"), text);
+        assertTrue(text.contains("ods_bytes_served_total{disk=\"disk0\"} 2560\n"), text);
+        assertTrue(text.contains("ods_errors_total{disk=\"disk0\"} 2\n"), text);
+        assertTrue(text.contains("ods_requests_in_flight 1\n"), text);
+        assertTrue(text.contains("# TYPE ods_read_seconds histogram\n"), text);
+        assertTrue(text.contains("ods_read_seconds_count{source=\"drive\"}"), text);
+        assertTrue(text.contains("# TYPE ods_reads_joined_total counter\n"), text);
+    }
+
+    @Test
+    @DisplayName("a listing of the discs is timed")
+    void refreshed() {
+        Metrics metrics = new Metrics(null);
+        metrics.refreshed(TimeUnit.MILLISECONDS.toNanos(30));
+
+        assertTrue(metrics.scrape().contains("ods_catalog_refresh_seconds_bucket{le=\"0.05\"} 1\n"));
+    }
+
+    @Test
+    @DisplayName("threads counting at once lose nothing")
+    void concurrent() throws Exception {
+        Metrics metrics = new Metrics(null);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    metrics.started();
+                    metrics.sent("disk1", 1);
+                    metrics.finished("disk1", "GET", 200, false);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        String text = metrics.scrape();
+        assertTrue(text.contains("ods_requests_total{disk=\"disk1\",method=\"GET\",status=\"200\"} 80000\n"), text);
+        assertTrue(text.contains("ods_bytes_served_total{disk=\"disk1\"} 80000\n"), text);
+        assertTrue(text.contains("ods_requests_in_flight 0\n"), text);
+    }
+
+    @Test
+    @DisplayName("a label value is escaped the way prometheus reads it")
+    void escape() {
+        assertEquals("a\\\"b\\\\c\\n", Metrics.escape("a\"b\\c\n"));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.Preferences;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * The server as a client sees it: a range read over http through jetty, servlet and
+ * disc, and looking a disc up by the name it is asked for.
+ * <p>
+ * The server runs with settings of its own, not the user's, and announces nothing.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OdsServerBenchmark {
+
+    /** how big each image is */
+    static final long SIZE = 64L * 1024 * 1024;
+
+    /** how many images are shared */
+    @Param({"1", "50"})
+    int images;
+
+    /** how many bytes a range is */
+    @Param({"2048", "65536", "1048576"})
+    int length;
+
+    Path directory;
+
+    OdsServer server;
+
+    HttpClient http;
+
+    String url;
+
+    /** the user's settings, put back after */
+    Preferences config;
+
+    /** Sets what the server reads, every setting there is but the fill cache, which stays off. */
+    static Preferences settings() {
+        Preferences settings = new MemoryPreferences();
+        settings.put("host", "127.0.0.1");
+        settings.putLong("cacheSize", 64 * 1024 * 1024);
+        settings.putLong("cacheRange", 256 * 1024);
+        settings.putBoolean("readAhead", true);
+        settings.putBoolean("readAheadImages", false);
+        settings.putInt("readAheadThreads", 4);
+        settings.putBoolean("async", false);
+        settings.putBoolean("virtualThreads", false);
+        settings.putBoolean("rip", false);
+        settings.putBoolean("watch", false);
+        settings.putLong("reconcile", 0);
+        settings.putBoolean("verify", false);
+        settings.putLong("scrubRate", 0);
+        settings.putLong("scrubInterval", 24);
+        settings.putBoolean("mapped", false);
+        return settings;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        config = OdsServer.config;
+        OdsServer.config = settings();
+
+        directory = Files.createTempDirectory("ods-bench");
+        DiskImageBenchmark.image(directory, "BENCH0", SIZE);
+        for (int i = 1; i < images; i++) {
+            // the rest only for the catalog to be as long, not read
+            Files.write(directory.resolve("BENCH" + i + ".iso"), Iso9660.of("BENCH" + i));
+        }
+
+        int port = OdsServerTest.freePort();
+        server = new OdsServer(directory.toString(), port, s -> null);
+        server.start();
+
+        http = HttpClient.newHttpClient();
+        String disk = server.disks().entrySet().stream()
+                .filter(e -> e.getValue().path().getFileName().toString().equals("BENCH0.iso"))
+                .map(Map.Entry::getKey)
+                .findFirst()
+                .orElseThrow();
+        url = "http://127.0.0.1:" + port + "/" + disk + ".dmg";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.stop();
+        OdsServer.config = config;
+        DiskImageBenchmark.delete(directory);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public byte[] get() throws Exception {
+        long start = ThreadLocalRandom.current().nextLong(SIZE / length) * length;
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("User-Agent", ODS.READ_USER_AGENT)
+                .header("Range", "bytes=" + start + "-" + (start + length - 1))
+                .GET()
+                .build();
+        HttpResponse<byte[]> response = http.send(request, BodyHandlers.ofByteArray());
+        if (response.statusCode() != 206) {
+            throw new IllegalStateException("status " + response.statusCode());
+        }
+        return response.body();
+    }
+
+    @Benchmark
+    public OnlineDisk disks() throws IOException {
+        return server.disks().get("disk" + ThreadLocalRandom.current().nextInt(images));
+    }
+}
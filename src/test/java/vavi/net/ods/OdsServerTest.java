@@ -13,6 +13,7 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
@@ -106,8 +107,12 @@ class OdsServerTest {
         return http.send(request.build(), BodyHandlers.ofByteArray());
     }
 
-    static HttpResponse<byte[]> get(String path, String userAgent, String range) throws Exception {
+    /** @param headers more headers, names and values */
+    static HttpResponse<byte[]> get(String path, String userAgent, String range, String... headers) throws Exception {
         HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url + path)).GET();
+        if (headers.length > 0) {
+            request.headers(headers);
+        }
         if (userAgent != null) {
             request.header("User-Agent", userAgent);
         }
@@ -145,7 +150,7 @@ class OdsServerTest {
     void read() throws Exception {
         HttpResponse<byte[]> response = get("/" + disk + ".dmg", ODS.READ_USER_AGENT, "bytes=0-15");
 
-        assertEquals(200, response.statusCode());
+        assertEquals(206, response.statusCode());
         assertArrayEquals(Arrays.copyOfRange(image, 0, 16), response.body());
         assertEquals("bytes 0-15/" + image.length,
                      response.headers().firstValue("Content-Range").orElseThrow());
@@ -159,7 +164,7 @@ class OdsServerTest {
         HttpResponse<byte[]> response =
                 get("/" + disk + ".dmg", ODS.READ_USER_AGENT, "bytes=%d-%d".formatted(start, start + 2047));
 
-        assertEquals(200, response.statusCode());
+        assertEquals(206, response.statusCode());
         assertArrayEquals(Arrays.copyOfRange(image, start, start + 2048), response.body());
     }
 
@@ -169,7 +174,7 @@ class OdsServerTest {
         int start = image.length - 16;
         HttpResponse<byte[]> response = get("/" + disk + ".dmg", ODS.READ_USER_AGENT, "bytes=%d-".formatted(start));
 
-        assertEquals(200, response.statusCode());
+        assertEquals(206, response.statusCode());
         assertArrayEquals(Arrays.copyOfRange(image, start, image.length), response.body());
     }
 
@@ -180,17 +185,52 @@ class OdsServerTest {
         HttpResponse<byte[]> response =
                 get("/" + disk + ".dmg", ODS.READ_USER_AGENT, "bytes=%d-%d".formatted(last, last));
 
-        assertEquals(200, response.statusCode());
+        assertEquals(206, response.statusCode());
         assertArrayEquals(new byte[] {image[last]}, response.body());
     }
 
+    @Test
+    @DisplayName("the first byte of the disc alone is one byte, not the disc")
+    void readFirstByte() throws Exception {
+        HttpResponse<byte[]> response = get("/" + disk + ".dmg", ODS.READ_USER_AGENT, "bytes=0-0");
+
+        assertEquals(206, response.statusCode());
+        assertArrayEquals(new byte[] {image[0]}, response.body());
+    }
+
+    @Test
+    @DisplayName("several ranges at once come back as the parts of one response, in order")
+    void readRanges() throws Exception {
+        int pvd = 16 * Iso9660.SECTOR_SIZE;
+        HttpResponse<byte[]> response = get("/" + disk + ".dmg", ODS.READ_USER_AGENT,
+                                            "bytes=%d-%d,0-15,8-31".formatted(pvd, pvd + 2047));
+
+        assertEquals(206, response.statusCode());
+        String type = response.headers().firstValue("Content-Type").orElseThrow();
+        assertTrue(type.startsWith("multipart/byteranges; boundary="), type);
+        String boundary = type.substring(type.indexOf('=') + 1);
+
+        byte[] body = response.body();
+        assertEquals(body.length, Long.parseLong(response.headers().firstValue("Content-Length").orElseThrow()));
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        int first = text.indexOf("Content-Range: bytes 0-31/" + image.length + "\r\n\r\n");
+        int second = text.indexOf("Content-Range: bytes %d-%d/%d\r\n\r\n".formatted(pvd, pvd + 2047, image.length));
+        assertTrue(0 < first && first < second, text);
+        assertTrue(text.endsWith("\r\n--" + boundary + "--\r\n"));
+
+        int data = text.indexOf("\r\n\r\n", first) + 4;
+        assertArrayEquals(Arrays.copyOfRange(image, 0, 32), Arrays.copyOfRange(body, data, data + 32));
+        data = text.indexOf("\r\n\r\n", second) + 4;
+        assertArrayEquals(Arrays.copyOfRange(image, pvd, pvd + 2048), Arrays.copyOfRange(body, data, data + 2048));
+    }
+
     @ParameterizedTest
     @ValueSource(strings = {".dmg", ".iso", ".img"})
     @DisplayName("a disc answers by whichever extension it is asked for")
     void extensions(String extension) throws Exception {
         HttpResponse<byte[]> response = get("/" + disk + extension, ODS.READ_USER_AGENT, "bytes=0-15");
 
-        assertEquals(200, response.statusCode());
+        assertEquals(206, response.statusCode());
         assertArrayEquals(Arrays.copyOfRange(image, 0, 16), response.body());
     }
 
@@ -199,7 +239,7 @@ class OdsServerTest {
     void asQuery() throws Exception {
         HttpResponse<byte[]> response = get("/?disk=" + disk + ".dmg", ODS.READ_USER_AGENT, "bytes=0-15");
 
-        assertEquals(200, response.statusCode());
+        assertEquals(206, response.statusCode());
         assertArrayEquals(Arrays.copyOfRange(image, 0, 16), response.body());
     }
 
@@ -247,7 +287,7 @@ class OdsServerTest {
         HttpResponse<byte[]> response =
                 get("/" + disk + ".dmg", ODS.READ_USER_AGENT, "bytes=%d-%d".formatted(start, image.length + 1000));
 
-        assertEquals(200, response.statusCode());
+        assertEquals(206, response.statusCode());
         assertArrayEquals(Arrays.copyOfRange(image, start, image.length), response.body());
     }
 
@@ -260,6 +300,59 @@ class OdsServerTest {
         assertEquals("application/octet-stream", response.headers().firstValue("Content-Type").orElseThrow());
     }
 
+    @Test
+    @DisplayName("a disc says what it is as it is, and when it changed, in http dates")
+    void validators() throws Exception {
+        HttpResponse<byte[]> response = head("/" + disk + ".dmg", ODS.STAT_USER_AGENT);
+
+        String etag = response.headers().firstValue("ETag").orElseThrow();
+        assertTrue(etag.startsWith("\"") && etag.endsWith("\""), etag);
+        assertTrue(Conditions.date(response.headers().firstValue("Last-Modified").orElseThrow()) > 0);
+        assertTrue(Conditions.date(response.headers().firstValue("Date").orElseThrow()) > 0);
+        assertEquals(etag, get("/" + disk + ".dmg", ODS.READ_USER_AGENT, "bytes=0-15").headers().firstValue("ETag").orElseThrow());
+    }
+
+    @Test
+    @DisplayName("a client holding the disc as it is is told so, and sent nothing")
+    void notModified() throws Exception {
+        String etag = head("/" + disk + ".dmg", ODS.STAT_USER_AGENT).headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<byte[]> response = get("/" + disk + ".dmg", ODS.READ_USER_AGENT, "bytes=0-15", "If-None-Match", etag);
+        assertEquals(304, response.statusCode());
+        assertEquals(0, response.body().length);
+
+        assertEquals(206, get("/" + disk + ".dmg", ODS.READ_USER_AGENT, "bytes=0-15", "If-None-Match", "\"other\"").statusCode());
+    }
+
+    @Test
+    @DisplayName("a read resumed on the disc it started on gets the range, on another the whole disc")
+    void ifRange() throws Exception {
+        String etag = head("/" + disk + ".dmg", ODS.STAT_USER_AGENT).headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<byte[]> same = get("/" + disk + ".dmg", ODS.READ_USER_AGENT, "bytes=16-31", "If-Range", etag);
+        assertEquals(206, same.statusCode());
+        assertArrayEquals(Arrays.copyOfRange(image, 16, 32), same.body());
+        assertTrue(same.headers().firstValue("Content-Range").isPresent());
+
+        HttpResponse<byte[]> swapped = get("/" + disk + ".dmg", ODS.READ_USER_AGENT, "bytes=16-31", "If-Range", "\"swapped\"");
+        assertEquals(200, swapped.statusCode());
+        assertArrayEquals(image, swapped.body());
+        assertTrue(swapped.headers().firstValue("Content-Range").isEmpty());
+    }
+
+    @Test
+    @DisplayName("what was served is there for prometheus to scrape")
+    void metrics() throws Exception {
+        get("/" + disk + ".dmg", ODS.READ_USER_AGENT, "bytes=0-15");
+        HttpResponse<byte[]> response = get("/metrics", null, null);
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Type").orElseThrow().startsWith("text/plain"));
+        String text = new String(response.body(), StandardCharsets.UTF_8);
+        assertTrue(text.contains("ods_requests_total{disk=\"" + disk + "\",method=\"GET\",status=\"206\"}"), text);
+        assertTrue(text.contains("ods_catalog_discs{kind=\"image\"} 2\n"), text);
+    }
+
     @Test
     @DisplayName("the shared directory is what the server serves from")
     void root() {
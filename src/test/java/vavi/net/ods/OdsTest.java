@@ -130,7 +130,7 @@ class OdsTest {
                     .GET()
                     .build(), BodyHandlers.ofByteArray());
 
-            assertEquals(200, data.statusCode());
+            assertEquals(206, data.statusCode());
             assertEquals("bytes %d-%d/%d".formatted(pos, last, size),
                          data.headers().firstValue("Content-Range").orElseThrow());
             System.arraycopy(data.body(), 0, read, pos, data.body().length);
@@ -6,13 +6,29 @@
 
 package vavi.net.ods;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import vavi.net.ods.OnlineDisk.DiskImage;
 import vavi.net.ods.OnlineDisk.OnlineDiskState;
@@ -81,12 +97,209 @@ class OnlineDiskTest {
     @DisplayName("the last byte of the disc is readable, one past it is not")
     void readTheEnd(@TempDir Path dir) throws Exception {
         DiskImage disk = shared(dir);
-        int last = disk.size() - 1;
+        long last = disk.size() - 1;
 
         assertEquals(1, disk.read(last, last).length);
         assertThrows(IllegalArgumentException.class, () -> disk.read(last, last + 1));
     }
 
+    @Test
+    @DisplayName("a disc let go of is read again by opening it again")
+    void readAfterClose(@TempDir Path dir) throws Exception {
+        DiskImage disk = shared(dir);
+        byte[] image = Files.readAllBytes(dir.resolve("shared.iso"));
+
+        assertArrayEquals(Arrays.copyOfRange(image, 0, 16), disk.read(0, 15));
+        disk.close();
+        assertArrayEquals(Arrays.copyOfRange(image, 16, 32), disk.read(16, 31));
+        disk.close();
+    }
+
+    @Test
+    @DisplayName("a read on a thread interrupted fails for that thread only, not for the next ones")
+    void readInterrupted(@TempDir Path dir) throws Exception {
+        shared(dir).close();
+        Path iso = dir.resolve("shared.iso");
+        byte[] image = Files.readAllBytes(iso);
+        DiskChannel channel = new DiskChannel(iso);
+        assertArrayEquals(Arrays.copyOfRange(image, 0, 16), channel.read(0, 16));
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(ClosedByInterruptException.class, () -> channel.read(16, 16));
+        } finally {
+            Thread.interrupted();
+        }
+        assertArrayEquals(Arrays.copyOfRange(image, 16, 32), channel.read(16, 16));
+
+        // closed under a read by an interrupt on another thread: opened again, and read
+        channel.channel().close();
+        assertArrayEquals(Arrays.copyOfRange(image, 32, 48), channel.read(32, 16));
+        channel.close();
+    }
+
+    @Test
+    @DisplayName("clients reading one disc at once each get their own range")
+    void readConcurrently(@TempDir Path dir) throws Exception {
+        DiskImage disk = shared(dir);
+        byte[] image = Files.readAllBytes(dir.resolve("shared.iso"));
+
+        IntStream.range(0, image.length / Iso9660.SECTOR_SIZE).parallel().forEach(i -> {
+            int start = i * Iso9660.SECTOR_SIZE;
+            try {
+                assertArrayEquals(Arrays.copyOfRange(image, start, start + Iso9660.SECTOR_SIZE),
+                                  disk.read(start, start + Iso9660.SECTOR_SIZE - 1));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        disk.close();
+    }
+
+    @Test
+    @DisplayName("a range handed straight to a channel is the range a read returns")
+    void transfer(@TempDir Path dir) throws Exception {
+        DiskImage disk = shared(dir);
+        byte[] image = Files.readAllBytes(dir.resolve("shared.iso"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertTrue(disk.zeroCopy());
+        disk.transferTo(100, image.length - 1, Channels.newChannel(out));
+
+        assertArrayEquals(Arrays.copyOfRange(image, 100, image.length), out.toByteArray());
+        disk.close();
+    }
+
+    @Test
+    @DisplayName("a disc replaced while a request reads it is closed once the request is done, not before")
+    void retired(@TempDir Path dir) throws Exception {
+        DiskImage disk = shared(dir);
+        disk.read(0, 2047);
+        FileChannel first = disk.channel.channel();
+
+        disk.acquire();
+        disk.acquire();
+        disk.retire();
+        assertTrue(first.isOpen());
+        disk.release();
+        assertTrue(first.isOpen());
+        disk.release();
+        assertFalse(first.isOpen());
+
+        // a request that found it before it was replaced still reads it, and it is closed after
+        disk.acquire();
+        disk.read(0, 2047);
+        FileChannel second = disk.channel.channel();
+        disk.release();
+        assertFalse(second.isOpen());
+    }
+
+    @Test
+    @DisplayName("a disc nobody reads is closed as soon as it is retired")
+    void retiredIdle(@TempDir Path dir) throws Exception {
+        DiskImage disk = shared(dir);
+        disk.read(0, 2047);
+        FileChannel channel = disk.channel.channel();
+
+        disk.retire();
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    @DisplayName("reads and transfers for a client are timed, reads in the background are not")
+    void timed(@TempDir Path dir) throws Exception {
+        DiskImage disk = shared(dir);
+        long before = OnlineDisk.imageReads.count();
+
+        disk.reader().read(0, 2048);
+        assertEquals(before, OnlineDisk.imageReads.count());
+
+        disk.read(0, 2047);
+        assertEquals(before + 1, OnlineDisk.imageReads.count());
+
+        disk.transferTo(0, 2047, Channels.newChannel(new ByteArrayOutputStream()));
+        assertEquals(before + 2, OnlineDisk.imageReads.count());
+        disk.close();
+    }
+
+    @Test
+    @DisplayName("a range handed to a file the os copies is the range a read returns as well")
+    void transferToFile(@TempDir Path dir) throws Exception {
+        DiskImage disk = shared(dir);
+        byte[] image = Files.readAllBytes(dir.resolve("shared.iso"));
+        Path copy = dir.resolve("copy");
+        try (FileChannel out = FileChannel.open(copy, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            disk.transferTo(100, image.length - 1, out);
+        }
+
+        assertArrayEquals(Arrays.copyOfRange(image, 100, image.length), Files.readAllBytes(copy));
+        disk.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    @DisplayName("a range handed to a channel the os cannot copy to is mapped only when the image is")
+    void transferToServlet(boolean mapped, @TempDir Path dir) throws Exception {
+        byte[] image = new byte[OnlineDisk.CHUNK_SIZE * 2 + 12345];
+        new Random(2).nextBytes(image);
+        Path iso = dir.resolve("big.iso");
+        Files.write(iso, image);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Boolean> heap = new ArrayList<>();
+        // what a servlet's output is to it
+        WritableByteChannel target = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                heap.add(!src.isDirect());
+                int n = src.remaining();
+                while (src.hasRemaining()) {
+                    out.write(src.get());
+                }
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        try (DiskImage disk = new DiskImage(iso, mapped)) {
+            disk.transferTo(100, image.length - 1, target);
+            assertEquals(mapped, disk.mapping());
+        }
+
+        assertArrayEquals(Arrays.copyOfRange(image, 100, image.length), out.toByteArray());
+        assertFalse(heap.contains(true), "no heap buffers");
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    @DisplayName("the last sector of an image bigger than a dvd-dl is where it should be, mapped or not")
+    void readPast4G(boolean mapped, @TempDir Path dir) throws Exception {
+        Path big = dir.resolve("big.iso");
+        long size = 9L * 1024 * 1024 * 1024;
+        byte[] sector = new byte[Iso9660.SECTOR_SIZE];
+        Arrays.fill(sector, (byte) 0xa5);
+        // sparse, so this takes none of the space it says it takes
+        try (FileChannel channel = FileChannel.open(big, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.SPARSE)) {
+            channel.write(ByteBuffer.wrap(sector), size - sector.length);
+        }
+
+        DiskImage disk = new DiskImage(big, mapped);
+        try {
+            assertEquals(size, disk.size());
+            assertArrayEquals(sector, disk.read(size - sector.length, size - 1));
+            assertArrayEquals(new byte[16], disk.read(size / 2, size / 2 + 15));
+        } finally {
+            disk.close();
+        }
+    }
+
     @Test
     @DisplayName("a read that ends before it starts is refused")
     void readBackwards(@TempDir Path dir) throws Exception {
@@ -115,4 +328,18 @@ class OnlineDiskTest {
         // an announcement is refreshed when this changes, so a rename has to show
         assertEquals(one.hashCode(), new DiskImage(dir.resolve("shared.iso")).hashCode());
     }
+
+    @Test
+    @DisplayName("an image has another tag and time once its file changed, and the same ones until then")
+    void etag(@TempDir Path dir) throws Exception {
+        try (DiskImage disk = shared(dir)) {
+            String etag = disk.etag();
+            assertEquals(etag, disk.etag());
+            assertEquals(Files.getLastModifiedTime(disk.path()).toMillis(), disk.lastModified());
+
+            Files.write(disk.path(), Iso9660.of("SWAPPED"));
+            Files.setLastModifiedTime(disk.path(), FileTime.fromMillis(disk.lastModified() + 2000));
+            assertFalse(etag.equals(disk.etag()));
+        }
+    }
 }
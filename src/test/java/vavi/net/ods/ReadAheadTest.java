@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import vavi.net.ods.OnlineDisk.DiskImage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+/**
+ * A client reading a disc through is read ahead of, and one reading about is not.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class ReadAheadTest {
+
+    static final int CHUNK = 4096;
+
+    @TempDir
+    Path dir;
+
+    byte[] image;
+
+    DiskImage disk;
+
+    ReadAhead readAhead;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        image = Iso9660.of("AHEAD");
+        for (int i = 0; i < image.length; i += 3) {
+            image[i] = (byte) i;
+        }
+        Path iso = dir.resolve("ahead.iso");
+        Files.write(iso, image);
+        disk = new DiskImage(iso);
+        readAhead = new ReadAhead(2);
+    }
+
+    @AfterEach
+    void afterEach() throws Exception {
+        readAhead.close();
+        disk.close();
+    }
+
+    @Test
+    @DisplayName("once a client reads on from where it stopped, what it reads next is read already")
+    void sequential() throws Exception {
+        assertNull(readAhead.read("10.0.0.1", disk, 0, CHUNK - 1));
+        // reading on: from here on it is read ahead of
+        assertNull(readAhead.read("10.0.0.1", disk, CHUNK, 2 * CHUNK - 1));
+
+        for (int start = 2 * CHUNK; start < image.length; start += CHUNK) {
+            byte[] data = readAhead.read("10.0.0.1", disk, start, start + CHUNK - 1);
+            assertNotNull(data, "not read ahead at " + start);
+            assertArrayEquals(Arrays.copyOfRange(image, start, start + CHUNK), data);
+        }
+    }
+
+    @Test
+    @DisplayName("a client reading here and there is not read ahead of")
+    void random() throws Exception {
+        for (int start : new int[] {16 * CHUNK, 0, 40 * CHUNK, 8 * CHUNK, 30 * CHUNK}) {
+            assertNull(readAhead.read("10.0.0.1", disk, start, start + CHUNK - 1));
+        }
+    }
+
+    @Test
+    @DisplayName("two clients reading one disc are two readers")
+    void clients() throws Exception {
+        readAhead.read("10.0.0.1", disk, 0, CHUNK - 1);
+        readAhead.read("10.0.0.1", disk, CHUNK, 2 * CHUNK - 1);
+
+        // where the first stopped is nothing to the second
+        assertNull(readAhead.read("10.0.0.2", disk, 2 * CHUNK, 3 * CHUNK - 1));
+        assertNotNull(readAhead.read("10.0.0.1", disk, 2 * CHUNK, 3 * CHUNK - 1));
+    }
+}
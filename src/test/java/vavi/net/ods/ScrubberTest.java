@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import vavi.net.ods.OnlineDisk.DiskImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Going through the images for rot.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class ScrubberTest {
+
+    @Test
+    @DisplayName("an image is hashed on the first pass and checked on the next")
+    void scrub(@TempDir Path dir) throws Exception {
+        Path image = ChunkHashesTest.image(dir);
+        try (OnlineDisk disk = new DiskImage(image)) {
+            Scrubber scrubber = new Scrubber(dir, () -> List.of(disk), 1024L * 1024 * 1024, 0);
+
+            scrubber.pass();
+            assertTrue(Files.exists(ChunkHashes.file(image)));
+            assertNotNull(disk.hashes());
+            assertEquals(0, scrubber.corrupt());
+
+            // rot: the file is as it was as far as its size and time tell
+            FileTime modified = Files.getLastModifiedTime(image);
+            byte[] data = Files.readAllBytes(image);
+            data[ChunkHashes.CHUNK_SIZE + 7] ^= 1;
+            Files.write(image, data);
+            Files.setLastModifiedTime(image, modified);
+
+            scrubber.pass();
+            assertEquals(1, scrubber.corrupt());
+        }
+    }
+
+    @Test
+    @DisplayName("the hashes of an image gone are removed")
+    void orphans(@TempDir Path dir) throws Exception {
+        Path gone = dir.resolve("gone.iso" + ChunkHashes.SUFFIX);
+        Files.write(gone, new byte[4]);
+        new Scrubber(dir, List::of, 1024 * 1024, 0).pass();
+        assertFalse(Files.exists(gone));
+    }
+
+    @Test
+    @DisplayName("the images are read no faster than the rate")
+    void paced(@TempDir Path dir) throws Exception {
+        Path image = ChunkHashesTest.image(dir);
+        try (OnlineDisk disk = new DiskImage(image)) {
+            // a little over three chunks at eight a second
+            Scrubber scrubber = new Scrubber(dir, () -> List.of(disk), 8L * ChunkHashes.CHUNK_SIZE, 0);
+            long started = System.nanoTime();
+            scrubber.pass();
+            assertTrue(System.nanoTime() - started > 350_000_000L);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import vavi.net.ods.OnlineDisk.CompressedImage;
+import vavi.net.ods.OnlineDisk.DiskImage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * What the sector cache keeps, what it lets go of, and that what comes out of it is
+ * what is on the disc.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class SectorCacheTest {
+
+    static final int SECTOR = SectorCache.SECTOR_SIZE;
+
+    @TempDir
+    Path dir;
+
+    byte[] image;
+
+    DiskImage disk;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        image = Iso9660.of("CACHED");
+        // something other than zeros everywhere, so a sector out of place shows
+        for (int i = 0; i < image.length; i += 7) {
+            image[i] ^= (byte) (i / SECTOR);
+        }
+        Path iso = dir.resolve("cached.iso");
+        Files.write(iso, image);
+        disk = new DiskImage(iso);
+    }
+
+    @AfterEach
+    void afterEach() throws Exception {
+        disk.close();
+    }
+
+    @Test
+    @DisplayName("any range, aligned or not, comes out the way it is on the disc, the second time from memory")
+    void ranges() throws Exception {
+        SectorCache cache = new SectorCache(1024 * 1024, 256 * 1024);
+
+        long misses = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (long[] range : new long[][] {{0, 15}, {100, 5000}, {SECTOR, 2 * SECTOR - 1}, {16 * SECTOR + 1, 16 * SECTOR + 1}, {image.length - 3000, image.length - 1}}) {
+                assertArrayEquals(Arrays.copyOfRange(image, (int) range[0], (int) range[1] + 1),
+                                  cache.read(disk, range[0], range[1]));
+            }
+            if (pass == 0) {
+                misses = cache.misses();
+            }
+        }
+
+        assertEquals(misses, cache.misses(), "the second time round nothing should be read off the disc");
+    }
+
+    @Test
+    @DisplayName("a disc read through once does not push out the sectors read all the time")
+    void scanResistant() throws Exception {
+        SectorCache cache = new SectorCache(8 * SECTOR, 256 * 1024);
+
+        // the volume descriptors, read by everybody over and over
+        for (int i = 0; i < 5; i++) {
+            cache.read(disk, 16 * SECTOR, 18 * SECTOR - 1);
+        }
+        long hits = cache.hits();
+
+        // somebody copies the whole disc
+        for (long sector = 0; sector < image.length / SECTOR; sector++) {
+            cache.read(disk, sector * SECTOR, (sector + 1) * SECTOR - 1);
+        }
+        hits = cache.hits() - hits;
+        long misses = cache.misses();
+
+        cache.read(disk, 16 * SECTOR, 18 * SECTOR - 1);
+
+        assertEquals(misses, cache.misses(), "the volume descriptors were pushed out");
+        assertTrue(cache.rejections() > 0);
+        assertEquals(2, hits, "only the descriptors themselves are read out of memory during the copy");
+        assertTrue(cache.used() <= cache.capacity());
+    }
+
+    @Test
+    @DisplayName("no more is kept than fits")
+    void bounded() throws Exception {
+        SectorCache cache = new SectorCache(4 * SECTOR, 256 * 1024);
+
+        for (int i = 0; i < 3; i++) {
+            for (long sector = 0; sector < 8; sector++) {
+                cache.read(disk, sector * SECTOR, sector * SECTOR + 9);
+            }
+        }
+
+        assertTrue(cache.used() <= 4 * SECTOR);
+    }
+
+    @Test
+    @DisplayName("long ranges are left to the disc")
+    void longRanges() {
+        SectorCache cache = new SectorCache(1024 * 1024, 64 * 1024);
+        CompressedImage compressed = new CompressedImage(dir.resolve("cached.cso"), CompressedIso.Format.CSO);
+
+        assertTrue(cache.caches(compressed, 64 * 1024));
+        assertFalse(cache.caches(compressed, 64 * 1024 + 1));
+    }
+
+    @Test
+    @DisplayName("a plain image is left to the os, which caches it already")
+    void plainImages() {
+        SectorCache cache = new SectorCache(1024 * 1024, 64 * 1024);
+
+        assertFalse(cache.caches(disk, SECTOR));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * Reads of the same bytes at the same time, read once.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+@Timeout(30)
+class SingleFlightTest {
+
+    CountDownLatch busy = new CountDownLatch(1);
+
+    List<long[]> reads = Collections.synchronizedList(new ArrayList<>());
+
+    /** a disc read slowly, the first read not coming back until let go */
+    byte[] disc(long position, int length) throws IOException {
+        reads.add(new long[] {position, length});
+        if (reads.size() == 1) {
+            try {
+                busy.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+        return ElevatorSchedulerTest.bytes(position, length);
+    }
+
+    static CompletableFuture<byte[]> read(SingleFlight flights, long position, int length) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return flights.read(position, length);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Test
+    @DisplayName("reads of what is being read wait for it, only what is not is read")
+    void joined() throws Exception {
+        SingleFlight flights = new SingleFlight(this::disc);
+        long joinedAll = SingleFlight.joinedAll.sum();
+
+        CompletableFuture<byte[]> first = read(flights, 1000, 1000);
+        while (reads.isEmpty()) {
+            Thread.sleep(10);
+        }
+        CompletableFuture<byte[]> inside = read(flights, 1200, 100);
+        CompletableFuture<byte[]> across = read(flights, 1500, 1000);
+        while (flights.joined() < 2) {
+            Thread.sleep(10);
+        }
+        busy.countDown();
+
+        assertArrayEquals(ElevatorSchedulerTest.bytes(1000, 1000), first.get());
+        assertArrayEquals(ElevatorSchedulerTest.bytes(1200, 100), inside.get());
+        assertArrayEquals(ElevatorSchedulerTest.bytes(1500, 1000), across.get());
+        assertEquals(2, reads.size());
+        assertArrayEquals(new long[] {2000, 500}, reads.get(1));
+        assertEquals(0, flights.flying());
+        // counted for the server as well, for as long as it runs, the disc gone or not
+        assertEquals(joinedAll + 2, SingleFlight.joinedAll.sum());
+    }
+
+    @Test
+    @DisplayName("what is read after a read came back is read again")
+    void landed() throws Exception {
+        busy.countDown();
+        SingleFlight flights = new SingleFlight(this::disc);
+
+        flights.read(0, 100);
+        flights.read(0, 100);
+
+        assertEquals(2, reads.size());
+        assertEquals(0, flights.joined());
+    }
+
+    @Test
+    @DisplayName("a read that failed fails whoever waited for it")
+    void failed() throws Exception {
+        CountDownLatch failing = new CountDownLatch(1);
+        SingleFlight flights = new SingleFlight((position, length) -> {
+            try {
+                failing.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            throw new IOException("no disc");
+        });
+
+        CompletableFuture<byte[]> first = read(flights, 0, 100);
+        while (flights.flying() == 0) {
+            Thread.sleep(10);
+        }
+        CompletableFuture<byte[]> second = read(flights, 0, 100);
+        while (flights.joined() == 0) {
+            Thread.sleep(10);
+        }
+        failing.countDown();
+
+        assertThrows(Exception.class, first::get);
+        assertThrows(Exception.class, second::get);
+        assertEquals(0, flights.flying());
+    }
+}
@@ -6,7 +6,6 @@
 
 package vavi.net.ods;
 
-import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -27,7 +26,6 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
-import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 
 /**
@@ -64,8 +62,8 @@ class ToolsTest {
     }
 
     @ParameterizedTest
-    @ValueSource(strings = {"aaa.iso", "vvv/aaa.dmg", "ccc/dddd/aaa.img"})
-    @DisplayName("iso, dmg and img are the images this serves")
+    @ValueSource(strings = {"aaa.iso", "vvv/aaa.dmg", "ccc/dddd/aaa.img", "aaa.cso", "aaa.ZSO"})
+    @DisplayName("iso, dmg, img and the compressed cso and zso are the images this serves")
     void images(String path) {
         assertTrue(tools.is_image(Paths.get(path)));
     }
@@ -110,38 +108,26 @@ class ToolsTest {
     }
 
     @Test
-    @DisplayName("the volume label of a real iso is read out of it")
+    @DisplayName("the volume label of a real iso is read out of it, cdrtools or not")
     void labelOfAnIso(@TempDir Path dir) throws Exception {
         Path iso = dir.resolve("image.iso");
         Files.write(iso, Iso9660.of("ODSLABEL"));
-        assumeTrue(cdrtoolsReads(iso), "cdrtools is not installed");
 
         assertEquals("ODSLABEL", tools.getLabel(iso));
     }
 
     @Test
-    @DisplayName("the geometry of a real iso is read out of it")
+    @DisplayName("the geometry of a real iso is read out of it, cdrtools or not")
     void blockSizeOfAnIso(@TempDir Path dir) throws Exception {
         Path iso = dir.resolve("image.iso");
         Files.write(iso, Iso9660.of("ODSLABEL"));
-        assumeTrue(cdrtoolsReads(iso), "cdrtools is not installed");
 
-        int[] geometry = tools.blockSize(iso);
+        long[] geometry = tools.blockSize(iso);
 
         assertEquals(Iso9660.SECTOR_SIZE, geometry[0]);
         assertEquals(Iso9660.SECTORS, geometry[1]);
     }
 
-    /** @return whether the cdrtools this shells out to are installed */
-    private boolean cdrtoolsReads(Path iso) {
-        try {
-            tools.blockSize(iso);
-            return true;
-        } catch (IOException | RuntimeException e) {
-            return false;
-        }
-    }
-
     @Test
     @DisplayName("the mac drive list is read for its device names")
     void macDrives() {
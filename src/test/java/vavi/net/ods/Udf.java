@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * The descriptors of a UDF disc and nothing else: the volume recognition sequence, an
+ * anchor, a volume descriptor sequence of a primary, a logical volume and a partition
+ * descriptor, and a file set descriptor at the start of the partition. Enough to be
+ * read for a label and a size.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+final class Udf {
+
+    static final int SECTOR_SIZE = 2048;
+
+    /** where the volume descriptor sequence is */
+    static final int SEQUENCE = 32;
+
+    /** where the partition starts */
+    static final int PARTITION = 300;
+
+    /** how long the partition is, in sectors */
+    static final int PARTITION_LENGTH = 60;
+
+    static final int SECTORS = PARTITION + PARTITION_LENGTH;
+
+    private Udf() {
+    }
+
+    /**
+     * @param logicalVolume the label of the logical volume descriptor, null for none
+     * @param fileSet the label of the file set descriptor
+     * @return the image
+     */
+    static byte[] of(String logicalVolume, String fileSet) {
+        return on(new byte[SECTORS * SECTOR_SIZE], logicalVolume, fileSet);
+    }
+
+    /** @return the image with the descriptors written on it, from sector 32 on */
+    static byte[] on(byte[] image, String logicalVolume, String fileSet) {
+        ByteBuffer disc = ByteBuffer.wrap(image).order(ByteOrder.LITTLE_ENDIAN);
+
+        ByteBuffer anchor = sector(disc, 256);
+        anchor.putInt(16, 16 * SECTOR_SIZE);
+        anchor.putInt(20, SEQUENCE);
+        tag(anchor, 2, 256);
+
+        ByteBuffer primary = sector(disc, SEQUENCE);
+        dstring(primary, 24, 32, "PRIMARY");
+        tag(primary, 1, SEQUENCE);
+
+        ByteBuffer logical = sector(disc, SEQUENCE + 1);
+        if (logicalVolume != null) {
+            dstring(logical, 84, 128, logicalVolume);
+        }
+        logical.putInt(212, SECTOR_SIZE);
+        logical.putInt(248, SECTOR_SIZE); // where the file set descriptor is, its length
+        logical.putInt(252, 0); // the first block of the partition
+        tag(logical, 6, SEQUENCE + 1);
+
+        ByteBuffer partition = sector(disc, SEQUENCE + 2);
+        partition.putInt(188, PARTITION);
+        partition.putInt(192, PARTITION_LENGTH);
+        tag(partition, 5, SEQUENCE + 2);
+
+        tag(sector(disc, SEQUENCE + 3), 8, SEQUENCE + 3);
+
+        ByteBuffer set = sector(disc, PARTITION);
+        dstring(set, 112, 128, fileSet);
+        tag(set, 256, 0);
+
+        return image;
+    }
+
+    private static ByteBuffer sector(ByteBuffer disc, int sector) {
+        return disc.duplicate().position(sector * SECTOR_SIZE).limit((sector + 1) * SECTOR_SIZE).slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** the descriptor tag, with its checksum */
+    private static void tag(ByteBuffer descriptor, int id, int location) {
+        descriptor.putShort(0, (short) id);
+        descriptor.putShort(2, (short) 2); // version
+        descriptor.putInt(12, location);
+        int sum = 0;
+        for (int i = 0; i < 16; i++) {
+            if (i != 4) {
+                sum += descriptor.get(i) & 0xff;
+            }
+        }
+        descriptor.put(4, (byte) sum);
+    }
+
+    /** a 16 bit d-string, the number of bytes used in its last byte */
+    private static void dstring(ByteBuffer descriptor, int offset, int length, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_16BE);
+        descriptor.put(offset, (byte) 16);
+        descriptor.put(offset + 1, bytes);
+        descriptor.put(offset + length - 1, (byte) (bytes.length + 1));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+/**
+ * The descriptors of a UDF disc, read without cdrtools.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class UdfVolumeTest {
+
+    @Test
+    @DisplayName("the logical volume gives the label, the partition the size")
+    void logicalVolume(@TempDir Path dir) throws Exception {
+        Path image = dir.resolve("movie.iso");
+        Files.write(image, Udf.of("Holiday Movie 2026", "FILESET"));
+
+        Volume volume = Volume.probe(image);
+
+        assertEquals("Holiday Movie 2026", volume.label());
+        assertEquals(Udf.SECTOR_SIZE, volume.blockSize());
+        assertEquals(Udf.SECTORS, volume.blocks());
+    }
+
+    @Test
+    @DisplayName("without a label on the logical volume, the file set gives it")
+    void fileSet(@TempDir Path dir) throws Exception {
+        Path image = dir.resolve("movie.iso");
+        Files.write(image, Udf.of(null, "File Set Label"));
+
+        assertEquals("File Set Label", Volume.probe(image).label());
+    }
+
+    @Test
+    @DisplayName("a UDF bridge disc is labelled as UDF has it")
+    void bridge(@TempDir Path dir) throws Exception {
+        byte[] disc = new byte[Udf.SECTORS * Udf.SECTOR_SIZE];
+        byte[] iso = Iso9660.of("BRIDGE");
+        System.arraycopy(iso, 0, disc, 0, iso.length);
+        Path image = dir.resolve("bridge.iso");
+        Files.write(image, Udf.on(disc, "Bridge Disc", "FILESET"));
+
+        Volume volume = Volume.probe(image);
+
+        assertEquals("Bridge Disc", volume.label());
+        assertEquals(Udf.SECTORS, volume.blocks());
+    }
+
+    @Test
+    @DisplayName("an anchor with a broken checksum is no anchor")
+    void broken(@TempDir Path dir) throws Exception {
+        byte[] disc = Udf.of("Broken", "FILESET");
+        disc[256 * Udf.SECTOR_SIZE + 4]++;
+        Path image = dir.resolve("broken.iso");
+        Files.write(image, disc);
+
+        assertNull(Volume.probe(image));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.net.ods;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * An image uploaded, all of it or none.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ */
+class UploadTest {
+
+    Tools tools = Tools.getInstance();
+
+    @Test
+    @DisplayName("an image is stored, hashed, its chunks too, and read for its label on the way")
+    void stored(@TempDir Path dir) throws Exception {
+        // bigger than a buffer, for the head to be kept across reads
+        byte[] image = new byte[3 * Upload.BUFFER_SIZE + 123];
+        byte[] iso = Iso9660.of("UPLOADED");
+        System.arraycopy(iso, 0, image, 0, iso.length);
+        image[image.length - 1] = 42;
+
+        Upload upload = Upload.store(new ByteArrayInputStream(image), dir, "new.iso");
+
+        assertEquals(dir.resolve("new.iso"), upload.path());
+        assertArrayEquals(image, Files.readAllBytes(upload.path()));
+        assertEquals(image.length, upload.size());
+        assertEquals(ImageIndex.hash(upload.path()), upload.hash());
+        assertEquals("UPLOADED", upload.volume().label());
+        ChunkHashes hashes = ChunkHashes.load(upload.path());
+        assertNotNull(hashes);
+        assertArrayEquals(ChunkHashesTest.build(upload.path()).root(), hashes.root());
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(2, files.count(), "the image and its hashes");
+        }
+    }
+
+    @Test
+    @DisplayName("a connection lost half way leaves nothing behind")
+    void broken(@TempDir Path dir) throws Exception {
+        InputStream broken = new SequenceInputStream(new ByteArrayInputStream(new byte[100_000]), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        });
+
+        assertThrows(IOException.class, () -> Upload.store(broken, dir, "half.iso"));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    @DisplayName("an image is not stored over another")
+    void exists(@TempDir Path dir) throws Exception {
+        Files.write(dir.resolve("old.iso"), new byte[1]);
+
+        assertThrows(FileAlreadyExistsException.class,
+                     () -> Upload.store(new ByteArrayInputStream(new byte[10]), dir, "old.iso"));
+        assertEquals(1, Files.size(dir.resolve("old.iso")));
+    }
+
+    @Test
+    @DisplayName("an image stored under the name while this one was on its way is not replaced")
+    void raced(@TempDir Path dir) throws Exception {
+        Path other = dir.resolve("raced.iso");
+        InputStream in = new SequenceInputStream(new ByteArrayInputStream(new byte[100_000]), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                // another upload of the name is done first
+                Files.write(other, new byte[1]);
+                return -1;
+            }
+        });
+
+        assertThrows(FileAlreadyExistsException.class, () -> Upload.store(in, dir, "raced.iso"));
+        assertEquals(1, Files.size(other));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"../escape.iso", "sub/dir.iso", "/etc/passwd.iso", ".ods-index", ".hidden.iso", "notes.txt", "..\\escape.iso", ""})
+    @DisplayName("nothing is stored outside the images directory, or hidden, or not an image")
+    void refused(String name) {
+        assertFalse(Upload.allowed(name, tools));
+    }
+
+    @Test
+    @DisplayName("a plain image name is fine")
+    void allowed() {
+        assertTrue(Upload.allowed("My Disc.iso", tools));
+        assertTrue(Upload.allowed("game.cso", tools));
+    }
+}